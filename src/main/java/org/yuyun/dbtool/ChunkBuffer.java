@@ -0,0 +1,308 @@
+package org.yuyun.dbtool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * 可重复使用的数据块缓冲区，编码格式与DataFile的写方法相同（大端字节序），
+ * 直接写入内部数组，不经过输出流和ByteBuffer视图，也不产生中间数组
+ */
+public class ChunkBuffer {
+    /**
+     * writeVarBinary为长度预留的字节数
+     */
+    public static final int VAR_LENGTH_RESERVED = 5;
+
+    /**
+     * 定点数列未指定小数位数（eg.Oracle的NUMBER、PostgreSQL的numeric）时，文件头中记录的小数位数
+     */
+    public static final int UNKNOWN_SCALE = -1;
+
+    /**
+     * writeDecimal补0用的10的幂，补0后不超过62位时最多补15个0
+     */
+    private static final long[] POWERS_OF_TEN = new long[16];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for(int i=1; i<POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    private byte[] buf;
+    private int size = 0;
+
+    public ChunkBuffer(int capacity) {
+        this.buf = new byte[capacity];
+    }
+
+    /**
+     * @return 内部数组，有效数据为[0, size)
+     */
+    public byte[] array() {
+        return buf;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void reset() {
+        size = 0;
+    }
+
+    /**
+     * 确保还能写入n个字节
+     */
+    public void ensureCapacity(int n) {
+        if(size + n > buf.length)
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + n));
+    }
+
+    /**
+     * 直接修改数组后设置有效数据长度
+     */
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public void write(byte[] bytes, int off, int len) {
+        ensureCapacity(len);
+        System.arraycopy(bytes, off, buf, size, len);
+        size += len;
+    }
+
+    public void writeByte(byte value) {
+        ensureCapacity(1);
+        buf[size++] = value;
+    }
+
+    public void writeShort(short value) {
+        ensureCapacity(2);
+        buf[size++] = (byte) (value >> 8);
+        buf[size++] = (byte) value;
+    }
+
+    public void writeInteger(int value) {
+        ensureCapacity(4);
+        putInteger(size, value);
+        size += 4;
+    }
+
+    public void writeLong(long value) {
+        ensureCapacity(8);
+        buf[size++] = (byte) (value >> 56);
+        buf[size++] = (byte) (value >> 48);
+        buf[size++] = (byte) (value >> 40);
+        buf[size++] = (byte) (value >> 32);
+        buf[size++] = (byte) (value >> 24);
+        buf[size++] = (byte) (value >> 16);
+        buf[size++] = (byte) (value >> 8);
+        buf[size++] = (byte) value;
+    }
+
+    public void writeDouble(double value) {
+        writeLong(Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * 写入无符号LEB128变长整数，每字节7位，低位在前
+     */
+    public void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buf[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[size++] = (byte) value;
+    }
+
+    /**
+     * 写入定点数。列的小数位数为UNKNOWN_SCALE时，先写入varint(zigzag(值的小数位数))，再按值的小数位数写入。
+     * 能按小数位数精确表示为62位以内的整数时，写入varint(zigzag(整数值) &lt;&lt; 1)；
+     * 否则写入varint(zigzag(值的小数位数) &lt;&lt; 1 | 1)、varint长度和整数值的补码
+     * @param scale 列的小数位数
+     */
+    public void writeDecimal(BigDecimal value, int scale) {
+        if(scale == UNKNOWN_SCALE) {
+            scale = value.scale();
+            writeVarLong(zigzag(scale));
+        }
+
+        //每补一个0整数值最多增加4位，按位数判断是否超出范围；小数位数多于列的值按补码写入
+        BigInteger unscaled = value.unscaledValue();
+        int zeros = scale - value.scale();
+        if(zeros >= 0 && unscaled.bitLength() + 4 * zeros <= 62) {
+            writeVarLong(zigzag(unscaled.longValue() * POWERS_OF_TEN[zeros]) << 1);
+            return;
+        }
+
+        byte[] bytes = unscaled.toByteArray();
+        writeVarLong(zigzag(value.scale()) << 1 | 1);
+        writeVarLong(bytes.length);
+        write(bytes, 0, bytes.length);
+    }
+
+    public static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    public static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * 直接编码为UTF-8，结果与String.getBytes(StandardCharsets.UTF_8)相同，
+     * 不成对的代理字符替换为'?'
+     */
+    public void writeString(String value) {
+        if(value == null || value.isEmpty()) {
+            writeInteger(0);
+            return;
+        }
+
+        ensureCapacity(4 + value.length() * 3);
+        int pos = putUtf8(value, size + 4);
+        putInteger(size, pos - size - 4);
+        size = pos;
+    }
+
+    /**
+     * 写入varint(((长度 &lt;&lt; 1 | 是否加入字典) + 1) &lt;&lt; 1)和UTF-8编码的字符串，见StringDictionary。
+     * 不写入null，由调用者通过空值位图表示
+     * @param dictionary 读取时是否加入字典
+     */
+    public void writeVarString(String value, boolean dictionary) {
+        int n = value.length();
+        ensureCapacity(5 + n * 3);
+        //短字符串的长度只占1个字节，直接编码到长度之后；否则先编码到预留的5个字节之后，再前移
+        int reserved = n * 3 < 0x20 ? 1 : 5;
+        int end = putUtf8(value, size + reserved);
+        int len = end - size - reserved;
+        moveAfterVarLength(size + reserved, len, (((long) len << 1 | (dictionary ? 1 : 0)) + 1) << 1);
+    }
+
+    /**
+     * 将UTF-8编码写入pos开始的位置，调用者需确保容量
+     * @return 结束位置
+     */
+    private int putUtf8(String value, int pos) {
+        int n = value.length();
+        for(int i=0; i<n; i++) {
+            char c = value.charAt(i);
+            if(c < 0x80)
+                buf[pos++] = (byte) c;
+            else if(c < 0x800) {
+                buf[pos++] = (byte) (0xC0 | (c >> 6));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else if(Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                buf[pos++] = (byte) (0xF0 | (cp >> 18));
+                buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+            }
+            else if(Character.isSurrogate(c))
+                buf[pos++] = '?';
+            else {
+                buf[pos++] = (byte) (0xE0 | (c >> 12));
+                buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * 在当前位置写入varint长度，并将位于from的len字节数据前移到长度之后
+     * @param header 写入的varint，包含长度
+     */
+    private void moveAfterVarLength(int from, int len, long header) {
+        writeVarLong(header);
+        if(size != from)
+            System.arraycopy(buf, from, buf, size, len);
+        size += len;
+    }
+
+    /**
+     * 追加n个为0的字节，用于之后按位设置的空值位图
+     * @return 起始位置
+     */
+    public int writeZeros(int n) {
+        ensureCapacity(n);
+        int start = size;
+        Arrays.fill(buf, start, start + n, (byte) 0);
+        size += n;
+        return start;
+    }
+
+    /**
+     * 写入时间：varint(zigzag(按delta-of-delta编码的微秒数) &lt;&lt; 1 | 是否有纳秒)，有纳秒时之后为varint(不足1微秒的纳秒数)
+     * @param micros 从1970-01-01 00:00:00 UTC开始的微秒数
+     * @param nanos 不足1微秒的纳秒数
+     */
+    public void writeTimestamp(long micros, int nanos, DeltaOfDelta deltas, int column) {
+        writeVarLong(zigzag(deltas.encode(column, micros)) << 1 | (nanos != 0 ? 1 : 0));
+        if(nanos != 0)
+            writeVarLong(nanos);
+    }
+
+    /**
+     * 读取流中的数据，写入长度和数据。不依赖available()，一直读取到流结束。
+     * 超过limit字节时停止读取，已读取的数据留在缓冲区中长度之后的位置，由调用者处理剩余的数据
+     * @return 是否完整写入
+     */
+    public boolean writeBinary(InputStream is, int limit) throws IOException {
+        int start = size;
+        writeInteger(0);
+        int len = 0;
+        while (true) {
+            ensureCapacity(8192);
+            int n = is.read(buf, size, (int) Math.min(buf.length - size, (long) limit + 1 - len));
+            if(n == -1)
+                break;
+            size += n;
+            len += n;
+            if(len > limit)
+                return false;
+        }
+        putInteger(start, len);
+        return true;
+    }
+
+    /**
+     * 同writeBinary，但长度为varint。数据先读取到预留的VAR_LENGTH_RESERVED个字节之后，读完后再前移。
+     * 超过limit字节时，已读取的数据留在起始位置加VAR_LENGTH_RESERVED之后
+     * @return 是否完整写入
+     */
+    public boolean writeVarBinary(InputStream is, int limit) throws IOException {
+        int start = size;
+        ensureCapacity(VAR_LENGTH_RESERVED);
+        size += VAR_LENGTH_RESERVED;
+        int len = 0;
+        while (true) {
+            ensureCapacity(8192);
+            int n = is.read(buf, size, (int) Math.min(buf.length - size, (long) limit + 1 - len));
+            if(n == -1)
+                break;
+            size += n;
+            len += n;
+            if(len > limit)
+                return false;
+        }
+        size = start;
+        moveAfterVarLength(start + VAR_LENGTH_RESERVED, len, len);
+        return true;
+    }
+
+    private void putInteger(int pos, int value) {
+        buf[pos] = (byte) (value >> 24);
+        buf[pos + 1] = (byte) (value >> 16);
+        buf[pos + 2] = (byte) (value >> 8);
+        buf[pos + 3] = (byte) value;
+    }
+}
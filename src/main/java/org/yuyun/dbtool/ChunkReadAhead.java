@@ -0,0 +1,70 @@
+package org.yuyun.dbtool;
+
+import org.yuyun.dbtool.codec.Codec;
+
+import java.util.Queue;
+import java.util.concurrent.*;
+
+/**
+ * 数据块预读的解压线程池：调用线程顺序读取后续数据块的压缩数据后提交到这里解压，
+ * 调用者解码当前数据块时后续的数据块已在其他线程中解压。解压实例在线程之间循环使用，每次只由一个线程持有。
+ */
+public class ChunkReadAhead {
+    private final ExecutorService pool;
+    private final Queue<Codec[]> codecs = new ConcurrentLinkedQueue<>();
+    private final Metrics metrics;
+
+    /**
+     * @param threads 解压线程数
+     * @param metrics 不为null时累计inflate阶段的耗时（各线程之和）
+     */
+    public ChunkReadAhead(int threads, Metrics metrics) {
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "chunk-inflate");
+            t.setDaemon(true);
+            return t;
+        });
+        this.metrics = metrics;
+    }
+
+    /**
+     * 提交解压任务，未压缩的数据块直接返回
+     */
+    public Future<byte[]> submit(DataFile.RawChunk chunk) {
+        if(chunk.codec == Codec.NONE)
+            return CompletableFuture.completedFuture(chunk.data);
+
+        return pool.submit(() -> {
+            long tick = metrics != null ? System.nanoTime() : 0;
+            Codec[] set = codecs.poll();
+            if(set == null)
+                set = new Codec[DataFile.CODECS];
+            try {
+                return DataFile.inflate(chunk, set);
+            } finally {
+                codecs.offer(set);
+                if(metrics != null)
+                    metrics.add("inflate", System.nanoTime() - tick);
+            }
+        });
+    }
+
+    /**
+     * 停止解压线程并释放解压实例，未完成的任务丢弃
+     */
+    public void close() {
+        pool.shutdownNow();
+        try {
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Codec[] set;
+        while ((set = codecs.poll()) != null) {
+            for(Codec codec : set) {
+                if(codec != null)
+                    codec.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,780 @@
+package org.yuyun.dbtool;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * 逐行读取数据文件中的数据块，支持行式（DataRow）和列式（ColumnChunk）两种布局。
+ * 列式数据块中不需要的列直接跳过，不解压也不解码，对应的值为null。
+ * 设置过滤条件时只返回满足条件的行，统计信息表明没有满足条件的行的数据块整块跳过。
+ * 存储在旁路文件中的大对象返回LobRef，不读取内容。
+ * 格式版本2的数据块为逐行编码v1；格式版本3为行编码v2或列式，字符串使用数据块内的字典编码，按写入顺序重建字典，
+ * 重复的值返回同一个String实例，日期按天数、时间按微秒和纳秒存储，读取为java.sql.Date和Timestamp，带时区的时间读取为OffsetDateTime。
+ * 设置预读后，解码当前数据块之前先读取后续数据块的压缩数据并提交解压，解码和解压同时进行。
+ * nextBatch按批读取到RowBatch，格式版本3整个数据块直接解码到列向量，不为每个值创建对象。
+ */
+public class ChunkReader {
+    //逐行读取后转换为RowBatch时每批的行数
+    private static final int BATCH_ROWS = 1024;
+
+    /**
+     * 已从文件读取的数据块，数据部分可能还在解压
+     */
+    private static class Frame {
+        byte flag;
+        int rows;
+        boolean skipped;
+        List<Future<byte[]>> parts = new ArrayList<>();    //列式数据块中不需要的列为null
+        long bytes;         //压缩前后的数据量之和
+    }
+
+    private final DataFile in;
+    private final FieldType[] fieldTypes;
+    private final int[] scales;
+    private final boolean[] requiredFields;
+    private final RowFilter filter;
+    private final LobFile lobs;
+    private final boolean legacy;   //格式版本2
+    private final List<List<String>> rowDicts = new ArrayList<>();   //行存储数据块中各列的字符串字典
+    private final DeltaOfDelta rowDeltas;
+    private ByteBuffer rowChunk = null;
+    private Object[][] columns = null;
+    private int columnRows = 0;
+    private int index = 0;
+    private int row = 0;
+    private int chunks = 0;
+    private int skippedChunks = 0;
+    private final ArrayDeque<Frame> frames = new ArrayDeque<>();
+    private ChunkReadAhead readAhead = null;
+    private int readAheadChunks = 0;
+    private long readAheadBytes = 0;
+    private long pendingBytes = 0;
+    private boolean eof = false;
+    private Metrics metrics = null;
+    private Object[] batchRow = null;
+    private boolean batchRowPending = false;
+    //最近一次转换的日期，相邻的行日期相同时不重复转换
+    private long lastDay = Long.MIN_VALUE;
+    private long lastDayMillis = 0;
+
+    /**
+     * @param in 数据文件，已经读完文件头
+     * @param fieldTypes 列类型
+     * @param scales 定点数列的小数位数，未指定时为ChunkBuffer.UNKNOWN_SCALE，其他列为0
+     * @param requiredFields 每列是否需要读取，为null时读取所有列
+     * @param filter 过滤条件，可以为null
+     * @param lobs 大对象旁路文件
+     */
+    public ChunkReader(DataFile in, FieldType[] fieldTypes, int[] scales, boolean[] requiredFields, RowFilter filter, LobFile lobs) {
+        this.in = in;
+        this.fieldTypes = fieldTypes;
+        this.scales = scales;
+        this.legacy = in.getFormat() < 3;
+        for(int i=0; i<fieldTypes.length; i++)
+            this.rowDicts.add(new ArrayList<>());
+        this.rowDeltas = new DeltaOfDelta(fieldTypes.length);
+        this.filter = filter;
+        this.lobs = lobs;
+        if(filter != null && requiredFields != null) {
+            requiredFields = requiredFields.clone();
+            filter.addRequiredFields(requiredFields);
+        }
+        this.requiredFields = requiredFields;
+    }
+
+    /**
+     * @return 最近一次next返回的行的行号，从1开始，包括被过滤掉的行
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * 定位到数据块之后设置该数据块之前的行数
+     */
+    public void setRow(int row) {
+        this.row = row;
+    }
+
+    /**
+     * 设置预读，格式版本3之前的数据文件不支持
+     * @param readAhead 解压线程池，由调用者负责关闭
+     * @param chunks 最多预读的数据块数
+     * @param maxBytes 预读的数据量上限，至少预读一个数据块
+     * @param metrics 不为null时累计wait阶段（等待解压完成）的耗时
+     */
+    public void setReadAhead(ChunkReadAhead readAhead, int chunks, long maxBytes, Metrics metrics) {
+        if(legacy)
+            return;
+        this.readAhead = readAhead;
+        this.readAheadChunks = chunks;
+        this.readAheadBytes = maxBytes;
+        this.metrics = metrics;
+    }
+
+    public int getChunks() {
+        return chunks;
+    }
+
+    /**
+     * @return 根据统计信息整块跳过的数据块数量
+     */
+    public int getSkippedChunks() {
+        return skippedChunks;
+    }
+
+    /**
+     * 读取下一行，当前数据块读完后从文件读取下一数据块
+     * @param row 输出：各列的值
+     * @return 没有更多数据时返回false
+     */
+    public boolean next(Object[] row) throws IOException {
+        while (true) {
+            if(rowChunk != null) {
+                if(rowChunk.get() == StartFlag.DataRow.ordinal()) {
+                    readRow(rowChunk, row);
+                    this.row += 1;
+                    if(filter == null || filter.matches(row))
+                        return true;
+                    continue;
+                }
+                rowChunk = null;
+            }
+            else if(columns != null) {
+                if(index < columnRows) {
+                    for(int i=0; i<row.length; i++)
+                        row[i] = columns[i] == null ? null : columns[i][index];
+                    index += 1;
+                    this.row += 1;
+                    if(filter == null || filter.matches(row))
+                        return true;
+                    continue;
+                }
+                columns = null;
+            }
+
+            Frame frame = nextFrame();
+            if(frame == null)
+                return false;
+            chunks += 1;
+
+            if(frame.skipped) {
+                this.row += frame.rows;
+                skippedChunks += 1;
+                continue;
+            }
+
+            if(frame.flag == StartFlag.DataRow.ordinal()) {
+                rowChunk = ByteBuffer.wrap(await(frame.parts.get(0)));
+                for(List<String> dict : rowDicts)
+                    dict.clear();
+                rowDeltas.reset();
+            }
+            else
+                readColumns(frame);
+        }
+    }
+
+    /**
+     * 读取下一批行，批中的行号连续。格式版本3每批为一个数据块，直接解码到列向量；
+     * 格式版本2和设置了过滤条件时逐行读取后转换，每批最多BATCH_ROWS行，跳过的行作为批的分界
+     * @param batch 输出，重用其中的列向量
+     * @return 没有更多数据时返回false
+     */
+    public boolean nextBatch(RowBatch batch) throws IOException {
+        if(legacy || filter != null)
+            return nextRows(batch);
+
+        while (true) {
+            Frame frame = nextFrame();
+            if(frame == null)
+                return false;
+            chunks += 1;
+
+            batch.reset(frame.rows);
+            batch.setSize(frame.rows);
+            batch.setFirstRow(row + 1);
+            if(frame.flag == StartFlag.DataRow.ordinal()) {
+                ByteBuffer buf = ByteBuffer.wrap(await(frame.parts.get(0)));
+                for(List<String> dict : rowDicts)
+                    dict.clear();
+                rowDeltas.reset();
+                for(int r=0; r<frame.rows && buf.get() == StartFlag.DataRow.ordinal(); r++)
+                    readRowV2(buf, batch, r);
+            }
+            else {
+                for(int i=0; i<fieldTypes.length; i++) {
+                    Future<byte[]> nulls = frame.parts.get(i * 2);
+                    if(nulls == null) {
+                        for(int r=0; r<frame.rows; r++)
+                            batch.setNull(i, r);
+                        continue;
+                    }
+
+                    byte[] values = await(frame.parts.get(i * 2 + 1));
+                    decodeColumn(i, frame.rows, await(nulls), values, batch);
+                }
+            }
+            row += frame.rows;
+            if(frame.rows > 0)
+                return true;
+        }
+    }
+
+    private boolean nextRows(RowBatch batch) throws IOException {
+        if(batchRow == null)
+            batchRow = new Object[fieldTypes.length];
+        if(!batchRowPending && !next(batchRow))
+            return false;
+
+        batchRowPending = false;
+        batch.reset(BATCH_ROWS);
+        batch.setFirstRow(row);
+        batch.setSize(1);
+        batch.setRow(0, batchRow);
+        while (batch.size() < BATCH_ROWS) {
+            int last = row;
+            if(!next(batchRow))
+                break;
+            if(row != last + 1) {
+                batchRowPending = true;
+                break;
+            }
+            batch.setSize(batch.size() + 1);
+            batch.setRow(batch.size() - 1, batchRow);
+        }
+        return true;
+    }
+
+    /**
+     * 读取一行，格式版本2为行编码v1，格式版本3为行编码v2
+     */
+    private void readRow(ByteBuffer buf, Object[] row) {
+        if(!legacy) {
+            readRowV2(buf, row);
+            return;
+        }
+
+        for(int i=0; i<fieldTypes.length; i++) {
+            row[i] = null;
+            switch (fieldTypes[i]) {
+                case Null:
+                    break;
+                case Integer:
+                    if (buf.get() == 0)
+                        row[i] = buf.getInt();
+                    break;
+                case Long:
+                    if (buf.get() == 0)
+                        row[i] = buf.getLong();
+                    break;
+                case Double:
+                    if (buf.get() == 0)
+                        row[i] = buf.getDouble();
+                    break;
+                case Decimal:
+                    if (buf.get() == 0)
+                        row[i] = readDecimal(buf, scales[i]);
+                    break;
+                case String:
+                    Object text = readBinary(buf);
+                    row[i] = text instanceof byte[] ? trimString(new String((byte[]) text, StandardCharsets.UTF_8)) : text;
+                    break;
+                case Date:
+                    //按小时存储，为0时为null
+                    int hours = buf.getInt();
+                    row[i] = hours == 0 ? null : new java.util.Date(hours * 3600L * 1000L);
+                    break;
+                case DateTime:
+                    long millis = buf.getLong();
+                    row[i] = millis == 0 ? null : new java.util.Date(millis);
+                    break;
+                case Binary:
+                    row[i] = readBinary(buf);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 读取长度和数据，长度为0时返回null
+     * @return byte[]或LobRef
+     */
+    private Object readBinary(ByteBuffer buf) {
+        int len = buf.getInt();
+        if(len == LobFile.REF)
+            return new LobRef(lobs, buf.getLong(), buf.getLong());
+        if(len == 0)
+            return null;
+
+        byte[] bytes = new byte[len];
+        buf.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * 读取行编码v2的一行：空值位图和非空列的值，见ExportProcessor.writeRow。
+     * 不需要的字符串和二进制列只跳过，不解码
+     */
+    private void readRowV2(ByteBuffer buf, Object[] row) {
+        byte[] array = buf.array();
+        int bitmap = buf.position();
+        buf.position(bitmap + (fieldTypes.length + 7) / 8);
+
+        for(int i=0; i<fieldTypes.length; i++) {
+            row[i] = null;
+            if((array[bitmap + (i >> 3)] & (1 << (i & 7))) != 0)
+                continue;
+
+            switch (fieldTypes[i]) {
+                case Integer:
+                    row[i] = (int) ChunkBuffer.unzigzag(readVarLong(buf));
+                    break;
+                case Long:
+                    row[i] = ChunkBuffer.unzigzag(readVarLong(buf));
+                    break;
+                case Double:
+                    row[i] = buf.getDouble();
+                    break;
+                case Decimal:
+                    row[i] = readDecimal(buf, scales[i]);
+                    break;
+                case Date:
+                case DateTime:
+                case DateTimeTZ:
+                    row[i] = readTemporal(buf, fieldTypes[i], rowDeltas, i);
+                    break;
+                case String:
+                    row[i] = readString(buf, rowDicts.get(i), requiredFields == null || requiredFields[i]);
+                    break;
+                case Binary:
+                    int len = (int) readVarLong(buf);
+                    if(len == 0)
+                        row[i] = new LobRef(lobs, readVarLong(buf), readVarLong(buf));
+                    else if(requiredFields != null && !requiredFields[i])
+                        buf.position(buf.position() + len);
+                    else {
+                        byte[] bytes = new byte[len];
+                        buf.get(bytes);
+                        row[i] = bytes;
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 读取行编码v2的一行到RowBatch的第r行，见readRowV2
+     */
+    private void readRowV2(ByteBuffer buf, RowBatch batch, int r) {
+        byte[] array = buf.array();
+        int bitmap = buf.position();
+        buf.position(bitmap + (fieldTypes.length + 7) / 8);
+
+        for(int i=0; i<fieldTypes.length; i++) {
+            if((array[bitmap + (i >> 3)] & (1 << (i & 7))) != 0 || fieldTypes[i] == FieldType.Null) {
+                batch.setNull(i, r);
+                continue;
+            }
+
+            switch (fieldTypes[i]) {
+                case Integer:
+                    batch.setInt(i, r, (int) ChunkBuffer.unzigzag(readVarLong(buf)));
+                    break;
+                case Long:
+                    batch.setLong(i, r, ChunkBuffer.unzigzag(readVarLong(buf)));
+                    break;
+                case Double:
+                    batch.setDouble(i, r, buf.getDouble());
+                    break;
+                case Decimal:
+                    batch.setObject(i, r, readDecimal(buf, scales[i]));
+                    break;
+                case Date:
+                case DateTime:
+                case DateTimeTZ:
+                    readTemporal(buf, fieldTypes[i], rowDeltas, i, batch, i, r);
+                    break;
+                case String:
+                    Object text = readString(buf, rowDicts.get(i), requiredFields == null || requiredFields[i]);
+                    if(text == null)
+                        batch.setNull(i, r);
+                    else
+                        batch.setObject(i, r, text);
+                    break;
+                case Binary:
+                    int len = (int) readVarLong(buf);
+                    if(len == 0)
+                        batch.setObject(i, r, new LobRef(lobs, readVarLong(buf), readVarLong(buf)));
+                    else if(requiredFields != null && !requiredFields[i]) {
+                        buf.position(buf.position() + len);
+                        batch.setNull(i, r);
+                    }
+                    else {
+                        byte[] bytes = new byte[len];
+                        buf.get(bytes);
+                        batch.setObject(i, r, bytes);
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 解码列式数据块中的一列到RowBatch，见decodeColumn
+     */
+    private void decodeColumn(int column, int rows, byte[] nulls, byte[] values, RowBatch batch) {
+        FieldType fieldType = fieldTypes[column];
+        ByteBuffer buf = ByteBuffer.wrap(values);
+        List<String> dict = fieldType == FieldType.String ? new ArrayList<>() : null;
+        DeltaOfDelta deltas = new DeltaOfDelta(1);
+        for(int r=0; r<rows; r++) {
+            if(fieldType == FieldType.Null || (r >> 3) < nulls.length && (nulls[r >> 3] & (1 << (r & 7))) != 0) {
+                batch.setNull(column, r);
+                continue;
+            }
+
+            switch (fieldType) {
+                case Integer:
+                    batch.setInt(column, r, buf.getInt());
+                    break;
+                case Long:
+                    batch.setLong(column, r, buf.getLong());
+                    break;
+                case Double:
+                    batch.setDouble(column, r, buf.getDouble());
+                    break;
+                case Decimal:
+                    batch.setObject(column, r, readDecimal(buf, scales[column]));
+                    break;
+                case String:
+                    batch.setObject(column, r, readString(buf, dict, true));
+                    break;
+                case Date:
+                case DateTime:
+                case DateTimeTZ:
+                    readTemporal(buf, fieldType, deltas, 0, batch, column, r);
+                    break;
+                case Binary:
+                    int len = buf.getInt();
+                    if(len == LobFile.REF)
+                        batch.setObject(column, r, new LobRef(lobs, buf.getLong(), buf.getLong()));
+                    //与行存储相同，长度为0时为null
+                    else if(len == 0)
+                        batch.setNull(column, r);
+                    else {
+                        byte[] blob = new byte[len];
+                        buf.get(blob);
+                        batch.setObject(column, r, blob);
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 取出下一个数据块，预读时再补充后续的数据块
+     * @return 没有更多数据块时返回null
+     */
+    private Frame nextFrame() throws IOException {
+        if(readAhead == null)
+            return eof ? null : readFrame();
+
+        fill();
+        Frame frame = frames.poll();
+        if(frame != null) {
+            pendingBytes -= frame.bytes;
+            fill();
+        }
+        return frame;
+    }
+
+    /**
+     * 预读后续的数据块，直到达到数据块数或数据量的上限
+     */
+    private void fill() throws IOException {
+        while (!eof && frames.size() < readAheadChunks && (frames.isEmpty() || pendingBytes < readAheadBytes)) {
+            Frame frame = readFrame();
+            if(frame == null)
+                break;
+            frames.add(frame);
+            pendingBytes += frame.bytes;
+        }
+    }
+
+    /**
+     * 从文件读取一个数据块的头部和数据，根据统计信息跳过的数据块和不需要的列不读取数据
+     * @return 到达数据结束标记时返回null
+     */
+    private Frame readFrame() throws IOException {
+        byte flag = (byte) in.readByte();
+        if(flag != StartFlag.DataRow.ordinal() && flag != StartFlag.ColumnChunk.ordinal()) {
+            eof = true;
+            return null;
+        }
+
+        Frame frame = new Frame();
+        frame.flag = flag;
+
+        //格式版本3每个数据块都有行数和统计信息
+        ChunkStats stats = null;
+        if(!legacy) {
+            frame.rows = in.readInteger();
+            stats = ChunkStats.read(in, fieldTypes, frame.rows);
+        }
+
+        if(filter != null && stats != null && !filter.mayMatch(stats)) {
+            int parts = flag == StartFlag.DataRow.ordinal() ? 1 : fieldTypes.length * 2;
+            for(int i=0; i<parts; i++)
+                in.skipChunk();
+            frame.skipped = true;
+            return frame;
+        }
+
+        if(flag == StartFlag.DataRow.ordinal()) {
+            frame.parts.add(readPart(frame));
+            return frame;
+        }
+
+        for(int i=0; i<fieldTypes.length; i++) {
+            if(requiredFields != null && !requiredFields[i]) {
+                in.skipChunk();
+                in.skipChunk();
+                frame.parts.add(null);
+                frame.parts.add(null);
+                continue;
+            }
+
+            frame.parts.add(readPart(frame));
+            frame.parts.add(readPart(frame));
+        }
+        return frame;
+    }
+
+    private Future<byte[]> readPart(Frame frame) throws IOException {
+        if(readAhead == null)
+            return CompletableFuture.completedFuture(in.readChunk());
+
+        DataFile.RawChunk chunk = in.readRawChunk();
+        frame.bytes += chunk.data.length + chunk.rawSize;
+        return readAhead.submit(chunk);
+    }
+
+    /**
+     * 等待数据块解压完成
+     */
+    private byte[] await(Future<byte[]> part) throws IOException {
+        long tick = metrics != null ? System.nanoTime() : 0;
+        try {
+            return part.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if(e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        } finally {
+            if(metrics != null)
+                metrics.add("wait", System.nanoTime() - tick);
+        }
+    }
+
+    private void readColumns(Frame frame) throws IOException {
+        columnRows = frame.rows;
+        index = 0;
+        columns = new Object[fieldTypes.length][];
+        for(int i=0; i<fieldTypes.length; i++) {
+            Future<byte[]> nulls = frame.parts.get(i * 2);
+            if(nulls == null)
+                continue;
+
+            byte[] values = await(frame.parts.get(i * 2 + 1));
+            columns[i] = decodeColumn(fieldTypes[i], scales[i], columnRows, await(nulls), values);
+        }
+    }
+
+    /**
+     * 解码一列的值，位图中标记为空的行不占用值缓冲区
+     */
+    private Object[] decodeColumn(FieldType fieldType, int scale, int rows, byte[] nulls, byte[] values) {
+        Object[] column = new Object[rows];
+        if(fieldType == FieldType.Null)
+            return column;
+
+        ByteBuffer buf = ByteBuffer.wrap(values);
+        List<String> dict = fieldType == FieldType.String ? new ArrayList<>() : null;
+        DeltaOfDelta deltas = new DeltaOfDelta(1);
+        for(int r=0; r<rows; r++) {
+            if((r >> 3) < nulls.length && (nulls[r >> 3] & (1 << (r & 7))) != 0)
+                continue;
+
+            switch (fieldType) {
+                case Integer:
+                    column[r] = buf.getInt();
+                    break;
+                case Long:
+                    column[r] = buf.getLong();
+                    break;
+                case Double:
+                    column[r] = buf.getDouble();
+                    break;
+                case Decimal:
+                    column[r] = readDecimal(buf, scale);
+                    break;
+                case String:
+                    column[r] = readString(buf, dict, true);
+                    break;
+                case Date:
+                case DateTime:
+                case DateTimeTZ:
+                    column[r] = readTemporal(buf, fieldType, deltas, 0);
+                    break;
+                case Binary:
+                    int len = buf.getInt();
+                    if(len == LobFile.REF)
+                        column[r] = new LobRef(lobs, buf.getLong(), buf.getLong());
+                    else if(len == 0)
+                        column[r] = null;
+                    else {
+                        byte[] blob = new byte[len];
+                        buf.get(blob);
+                        column[r] = blob;
+                    }
+                    break;
+            }
+        }
+        return column;
+    }
+
+    /**
+     * 读取日期或时间，见ExportProcessor.writeTemporal
+     * @param column deltas中的列序号
+     * @return java.sql.Date、Timestamp或OffsetDateTime
+     */
+    private static Object readTemporal(ByteBuffer buf, FieldType fieldType, DeltaOfDelta deltas, int column) {
+        if(fieldType == FieldType.Date)
+            return java.sql.Date.valueOf(LocalDate.ofEpochDay(deltas.decode(column, ChunkBuffer.unzigzag(readVarLong(buf)))));
+
+        long x = readVarLong(buf);
+        long micros = deltas.decode(column, ChunkBuffer.unzigzag(x >>> 1));
+        long seconds = Math.floorDiv(micros, 1000000L);
+        int nanos = (int) Math.floorMod(micros, 1000000L) * 1000 + ((x & 1) != 0 ? (int) readVarLong(buf) : 0);
+        if(fieldType == FieldType.DateTime) {
+            Timestamp ts = new Timestamp(seconds * 1000);
+            ts.setNanos(nanos);
+            return ts;
+        }
+
+        ZoneOffset offset = ZoneOffset.ofTotalSeconds((int) ChunkBuffer.unzigzag(readVarLong(buf)));
+        return OffsetDateTime.ofInstant(Instant.ofEpochSecond(seconds, nanos), offset);
+    }
+
+    /**
+     * 读取日期或时间到RowBatch，不创建对象，见readTemporal
+     * @param column deltas中的列序号
+     * @param batchColumn RowBatch中的列序号
+     */
+    private void readTemporal(ByteBuffer buf, FieldType fieldType, DeltaOfDelta deltas, int column, RowBatch batch, int batchColumn, int r) {
+        if(fieldType == FieldType.Date) {
+            long day = deltas.decode(column, ChunkBuffer.unzigzag(readVarLong(buf)));
+            if(day != lastDay) {
+                lastDayMillis = java.sql.Date.valueOf(LocalDate.ofEpochDay(day)).getTime();
+                lastDay = day;
+            }
+            batch.setLong(batchColumn, r, lastDayMillis);
+            return;
+        }
+
+        long x = readVarLong(buf);
+        long micros = deltas.decode(column, ChunkBuffer.unzigzag(x >>> 1));
+        batch.setTime(batchColumn, r, micros, (x & 1) != 0 ? (int) readVarLong(buf) : 0);
+        if(fieldType == FieldType.DateTimeTZ)
+            batch.setOffset(batchColumn, r, (int) ChunkBuffer.unzigzag(readVarLong(buf)));
+    }
+
+    /**
+     * 读取字典编码的字符串，见StringDictionary.write
+     * @param dict 当前数据块中该列的字典
+     * @param required 为false时只跳过，不解码，返回null
+     * @return String或LobRef
+     */
+    private Object readString(ByteBuffer buf, List<String> dict, boolean required) {
+        long x = readVarLong(buf);
+        if(x == 0)
+            return new LobRef(lobs, readVarLong(buf), readVarLong(buf));
+        if((x & 1) != 0)
+            return required ? dict.get((int) (x >>> 1)) : null;
+
+        long y = (x >>> 1) - 1;
+        int len = (int) (y >>> 1);
+        if(!required) {
+            buf.position(buf.position() + len);
+            return null;
+        }
+
+        String s = trimString(new String(buf.array(), buf.position(), len, StandardCharsets.UTF_8));
+        buf.position(buf.position() + len);
+        if((y & 1) != 0)
+            dict.add(s);
+        return s;
+    }
+
+    /**
+     * 读取无符号LEB128变长整数，见ChunkBuffer.writeVarLong
+     */
+    static long readVarLong(ByteBuffer buf) {
+        long value = 0;
+        for(int shift=0; ; shift+=7) {
+            byte b = buf.get();
+            value |= (long) (b & 0x7F) << shift;
+            if(b >= 0)
+                return value;
+        }
+    }
+
+    /**
+     * 读取定点数，见ChunkBuffer.writeDecimal
+     */
+    static BigDecimal readDecimal(ByteBuffer buf, int scale) {
+        if(scale == ChunkBuffer.UNKNOWN_SCALE)
+            scale = (int) ChunkBuffer.unzigzag(readVarLong(buf));
+
+        long x = readVarLong(buf);
+        if((x & 1) == 0)
+            return BigDecimal.valueOf(ChunkBuffer.unzigzag(x >>> 1), scale);
+
+        int s = (int) ChunkBuffer.unzigzag(x >>> 1);
+        byte[] bytes = new byte[(int) readVarLong(buf)];
+        buf.get(bytes);
+        return new BigDecimal(new BigInteger(bytes), s);
+    }
+
+    /**
+     * 截断字符串中第一个空字符及之后的内容
+     */
+    private static String trimString(String s) {
+        if(s != null) {
+            int index = s.indexOf('\u0000');
+            if (index != -1)
+                s = s.substring(0, index);
+        }
+        return s;
+    }
+}
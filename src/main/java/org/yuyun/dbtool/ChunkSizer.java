@@ -0,0 +1,79 @@
+package org.yuyun.dbtool;
+
+/**
+ * 根据实测的行宽和压缩率决定数据块的大小，使每个数据块压缩后接近设定的目标大小。
+ * 窄表的数据块不会因为行数固定而过小，宽表的数据块也不会过大而增加解码的延迟。
+ * 每提交一个数据块后按累计的平均行宽和流水线已写入的数据块的压缩率重新计算。
+ */
+public class ChunkSizer {
+    private static final int INITIAL_ROWS = 1000;
+    private static final int MIN_ROWS = 100;
+    private static final int MAX_ROWS = 1000000;
+    private static final double MAX_RATIO = 16;
+
+    private final ChunkWriter writer;
+    private final long target;
+    private final int fixedRows;
+    private final long fixedBytes;
+    private int maxRows;
+    private long maxBytes;
+    private long sampleRows = 0;
+    private long sampleBytes = 0;
+
+    /**
+     * @param writer 写入流水线，用于获取压缩率
+     * @param target 数据块压缩后的目标字节数
+     * @param fixedRows 大于0时固定每个数据块的行数
+     * @param fixedBytes 大于0时固定每个数据块压缩前的字节数上限
+     */
+    public ChunkSizer(ChunkWriter writer, long target, int fixedRows, long fixedBytes) {
+        this.writer = writer;
+        this.target = target;
+        this.fixedRows = fixedRows;
+        this.fixedBytes = fixedBytes;
+        this.maxRows = fixedRows > 0 ? fixedRows : INITIAL_ROWS;
+        this.maxBytes = fixedBytes > 0 ? fixedBytes : target;
+    }
+
+    /**
+     * @param rows 当前数据块的行数
+     * @param bytes 当前数据块压缩前的字节数
+     * @return 是否应该提交当前数据块
+     */
+    public boolean isFull(int rows, long bytes) {
+        return rows >= maxRows || bytes >= maxBytes;
+    }
+
+    /**
+     * 提交一个数据块后重新计算数据块的大小
+     */
+    public void onFlush(int rows, long bytes) {
+        sampleRows += rows;
+        sampleBytes += bytes;
+
+        if(fixedBytes <= 0) {
+            //还没有数据块写入文件时按不压缩计算
+            long raw = writer.getRawBytes(), stored = writer.getStoredBytes();
+            double ratio = stored > 0 ? Math.min(MAX_RATIO, Math.max(1, (double) raw / stored)) : 1;
+            maxBytes = (long) (target * ratio);
+        }
+        if(fixedRows <= 0) {
+            long rowBytes = Math.max(1, sampleBytes / sampleRows);
+            maxRows = (int) Math.max(MIN_ROWS, Math.min(MAX_ROWS, maxBytes / rowBytes));
+        }
+    }
+
+    /**
+     * @return 当前每个数据块的最大行数
+     */
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    /**
+     * @return 当前每个数据块压缩前的最大字节数
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+}
@@ -0,0 +1,211 @@
+package org.yuyun.dbtool;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * 数据块的列统计信息：每列的空值数量和最小值/最大值，用于读取时按过滤条件跳过整个数据块。
+ * 统计的是读取时解码得到的值，例如行式数据块中的空字符串读取为null，按空值统计。
+ * 整数、长整数、日期和时间按long比较（日期为天数，与时区无关；时间为毫秒数），浮点数按double比较，
+ * 定点数按double记录并向外扩展一个最小单位，保证范围包含精确值，字符串按String.compareTo比较；超长或含有空字符的字符串、NaN以及二进制数据不记录最小值/最大值。
+ */
+public class ChunkStats {
+    private static final int MAX_STRING_LENGTH = 64;
+
+    private final FieldType[] fieldTypes;
+    private final int[] nulls;
+    private final byte[] range;     //0：没有值，1：有最小值/最大值，2：有值但不记录最小值/最大值
+    private final long[] minLong, maxLong;
+    private final double[] minDouble, maxDouble;
+    private final String[] minString, maxString;
+    private int rows = 0;
+
+    public ChunkStats(FieldType[] fieldTypes) {
+        int n = fieldTypes.length;
+        this.fieldTypes = fieldTypes;
+        this.nulls = new int[n];
+        this.range = new byte[n];
+        this.minLong = new long[n];
+        this.maxLong = new long[n];
+        this.minDouble = new double[n];
+        this.maxDouble = new double[n];
+        this.minString = new String[n];
+        this.maxString = new String[n];
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public void setRows(int rows) {
+        this.rows = rows;
+    }
+
+    public int getNullCount(int column) {
+        return nulls[column];
+    }
+
+    /**
+     * @return 是否记录了最小值/最大值
+     */
+    public boolean hasRange(int column) {
+        return range[column] == 1;
+    }
+
+    public long getMinLong(int column) {
+        return minLong[column];
+    }
+
+    public long getMaxLong(int column) {
+        return maxLong[column];
+    }
+
+    public double getMinDouble(int column) {
+        return minDouble[column];
+    }
+
+    public double getMaxDouble(int column) {
+        return maxDouble[column];
+    }
+
+    public String getMinString(int column) {
+        return minString[column];
+    }
+
+    public String getMaxString(int column) {
+        return maxString[column];
+    }
+
+    public void addNull(int column) {
+        nulls[column] += 1;
+    }
+
+    public void add(int column, long value) {
+        if(range[column] == 0) {
+            minLong[column] = maxLong[column] = value;
+            range[column] = 1;
+        }
+        else if(value < minLong[column])
+            minLong[column] = value;
+        else if(value > maxLong[column])
+            maxLong[column] = value;
+    }
+
+    public void add(int column, double value) {
+        if(Double.isNaN(value))
+            range[column] = 2;
+        else if(range[column] == 0) {
+            minDouble[column] = maxDouble[column] = value;
+            range[column] = 1;
+        }
+        else if(value < minDouble[column])
+            minDouble[column] = value;
+        else if(value > maxDouble[column])
+            maxDouble[column] = value;
+    }
+
+    public void add(int column, String value) {
+        if(range[column] == 2)
+            return;
+        if(value.length() > MAX_STRING_LENGTH || value.indexOf('\0') != -1)
+            range[column] = 2;
+        else if(range[column] == 0) {
+            minString[column] = maxString[column] = value;
+            range[column] = 1;
+        }
+        else if(value.compareTo(minString[column]) < 0)
+            minString[column] = value;
+        else if(value.compareTo(maxString[column]) > 0)
+            maxString[column] = value;
+    }
+
+    public void add(int column, BigDecimal value) {
+        double d = value.doubleValue();
+        add(column, Math.nextDown(d));
+        add(column, Math.nextUp(d));
+    }
+
+    /**
+     * 记录有值但不比较大小的列
+     */
+    public void addValue(int column) {
+        range[column] = 2;
+    }
+
+    /**
+     * 写入统计信息，每列依次为：空值数量、是否有最小值/最大值、最小值、最大值
+     */
+    public void write(DataFile file) throws IOException {
+        for(int i=0; i<fieldTypes.length; i++) {
+            file.writeInteger(nulls[i]);
+            if(range[i] != 1) {
+                file.writeByte((byte) 0);
+                continue;
+            }
+
+            file.writeByte((byte) 1);
+            switch (fieldTypes[i]) {
+                case Integer:
+                case Long:
+                case Date:
+                case DateTime:
+                case DateTimeTZ:
+                    file.writeLong(minLong[i]);
+                    file.writeLong(maxLong[i]);
+                    break;
+                case Double:
+                case Decimal:
+                    file.writeDouble(minDouble[i]);
+                    file.writeDouble(maxDouble[i]);
+                    break;
+                case String:
+                    file.writeString(minString[i]);
+                    file.writeString(maxString[i]);
+                    break;
+                default:
+                    assert false;
+            }
+        }
+    }
+
+    /**
+     * 读取统计信息
+     * @param rows 数据块中的行数
+     */
+    public static ChunkStats read(DataFile file, FieldType[] fieldTypes, int rows) throws IOException {
+        ChunkStats stats = new ChunkStats(fieldTypes);
+        stats.rows = rows;
+        for(int i=0; i<fieldTypes.length; i++) {
+            stats.nulls[i] = file.readInteger();
+            stats.range[i] = (byte) file.readByte();
+            if(stats.range[i] == 0)
+                continue;
+
+            switch (fieldTypes[i]) {
+                case Integer:
+                case Long:
+                case Date:
+                case DateTime:
+                case DateTimeTZ:
+                    stats.minLong[i] = file.readLong();
+                    stats.maxLong[i] = file.readLong();
+                    break;
+                case Double:
+                case Decimal:
+                    stats.minDouble[i] = file.readDouble();
+                    stats.maxDouble[i] = file.readDouble();
+                    break;
+                case String:
+                    //长度为0的字符串读取为null
+                    String min = file.readString();
+                    String max = file.readString();
+                    stats.minString[i] = min == null ? "" : min;
+                    stats.maxString[i] = max == null ? "" : max;
+                    break;
+                default:
+                    throw new IOException(String.format("Unexpected statistics for field type %s", fieldTypes[i]));
+            }
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,348 @@
+package org.yuyun.dbtool;
+
+import org.yuyun.dbtool.codec.Codec;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * 数据块写入流水线：调用线程负责读取和编码，压缩线程池负责压缩，写入线程按提交顺序写入数据文件。
+ * 各阶段之间通过有界队列连接，压缩或磁盘跟不上时write会阻塞调用线程。
+ * 数据块缓冲区和压缩算法实例在流水线内循环使用。压缩后没有变小的数据块按原样存储。
+ * 列式数据块的每个位图和值缓冲区分别压缩。
+ */
+public class ChunkWriter {
+    /**
+     * 带有检查点的数据块写入文件后，在写入线程中回调
+     */
+    public interface CheckpointListener {
+        /**
+         * @param checkpoint 提交数据块时指定的检查点，由调用者定义
+         * @param offset 数据块结束位置
+         * @param rows 已写入的总行数
+         */
+        void onCheckpoint(Object checkpoint, long offset, int rows) throws IOException;
+    }
+
+    private static class Part {
+        ChunkBuffer raw;
+        ChunkBuffer data;   //压缩结果，按原样存储时为null
+        byte codec = Codec.NONE;
+    }
+
+    private static class Block {
+        ChunkBuffer chunk;      //行式数据块
+        ColumnChunk columns;    //列式数据块
+        int rows;
+        ChunkStats stats;
+        Object checkpoint;
+        Part[] parts;
+    }
+
+    private static final int INITIAL_CHUNK_SIZE = 64 * 1024;
+    private static final Future<Block> END = CompletableFuture.completedFuture(null);
+
+    private final DataFile file;
+    private final Supplier<Codec> codecFactory;
+    private final ExecutorService pool;
+    private final BlockingQueue<Future<Block>> queue;
+    private final Thread writer;
+    private final Queue<ChunkBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final Queue<ColumnChunk> columnChunks = new ConcurrentLinkedQueue<>();
+    private final ChunkBuffer index = new ChunkBuffer(4096);    //数据块索引，只由写入线程访问
+    private int indexRows = 0;
+    private CheckpointListener checkpointListener = null;
+    private Metrics metrics = null;
+    private final Queue<Codec> codecs = new ConcurrentLinkedQueue<>();
+    private volatile Throwable error = null;
+    //已写入的数据块数、压缩前和压缩后的数据量，只由写入线程更新
+    private volatile int chunks = 0;
+    private volatile long rawBytes = 0;
+    private volatile long storedBytes = 0;
+
+    /**
+     * @param file 数据文件，流水线运行期间只能由写入线程访问
+     * @param threads 压缩线程数，为0时在调用线程中压缩和写入
+     * @param codecFactory 创建压缩算法实例的工厂，见Codec.parse
+     */
+    public ChunkWriter(DataFile file, int threads, Supplier<Codec> codecFactory) {
+        this.file = file;
+        this.codecFactory = codecFactory;
+        if(threads <= 0) {
+            this.pool = null;
+            this.queue = null;
+            this.writer = null;
+            return;
+        }
+
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "chunk-compress");
+            t.setDaemon(true);
+            return t;
+        });
+        this.queue = new ArrayBlockingQueue<>(threads * 2);
+        this.writer = new Thread(this::writeLoop, "chunk-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public void setCheckpointListener(CheckpointListener listener) {
+        this.checkpointListener = listener;
+    }
+
+    /**
+     * 设置后累计compress（压缩）和write（写入文件）阶段的耗时，需在提交数据块之前调用
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * 添加文件中已有的数据块的索引，用于在已有文件后继续写入，需在提交数据块之前调用
+     * @param offset 数据块在文件中的位置
+     * @param rows 数据块中的行数
+     */
+    public void addIndex(long offset, int rows) {
+        index.writeLong(offset);
+        index.writeInteger(indexRows);
+        index.writeInteger(rows);
+        indexRows += rows;
+    }
+
+    /**
+     * 获取一个空的数据块缓冲区
+     */
+    public ChunkBuffer newChunk() {
+        ChunkBuffer chunk = buffers.poll();
+        if(chunk == null)
+            return new ChunkBuffer(INITIAL_CHUNK_SIZE);
+        chunk.reset();
+        return chunk;
+    }
+
+    /**
+     * 获取一个空的列式数据块
+     * @param columns 列数
+     */
+    public ColumnChunk newColumnChunk(int columns) {
+        ColumnChunk chunk = columnChunks.poll();
+        if(chunk == null || chunk.getColumnCount() != columns)
+            return new ColumnChunk(columns);
+        chunk.reset();
+        return chunk;
+    }
+
+    /**
+     * 提交一个数据块，数据块按提交顺序写入文件
+     * @param chunk 未压缩的数据块，提交后由流水线回收，调用者不能再使用
+     * @param rows 数据块中的行数
+     * @param stats 数据块的列统计信息
+     * @param checkpoint 检查点，数据块写入后回调CheckpointListener，可以为null
+     */
+    public void write(ChunkBuffer chunk, int rows, ChunkStats stats, Object checkpoint) throws IOException {
+        Block block = new Block();
+        block.chunk = chunk;
+        block.rows = rows;
+        block.stats = stats;
+        block.checkpoint = checkpoint;
+        block.parts = new Part[] {newPart(chunk)};
+        submit(block);
+    }
+
+    /**
+     * 提交一个列式数据块，数据块按提交顺序写入文件
+     * @param columns 未压缩的列式数据块，提交后由流水线回收，调用者不能再使用
+     * @param stats 数据块的列统计信息
+     * @param checkpoint 检查点，数据块写入后回调CheckpointListener，可以为null
+     */
+    public void write(ColumnChunk columns, ChunkStats stats, Object checkpoint) throws IOException {
+        Block block = new Block();
+        block.columns = columns;
+        block.rows = columns.getRows();
+        block.stats = stats;
+        block.checkpoint = checkpoint;
+        block.parts = new Part[columns.getColumnCount() * 2];
+        for(int i=0; i<columns.getColumnCount(); i++) {
+            block.parts[i * 2] = newPart(columns.getNulls(i));
+            block.parts[i * 2 + 1] = newPart(columns.getValues(i));
+        }
+        submit(block);
+    }
+
+    private synchronized void submit(Block block) throws IOException {
+        checkError();
+        if(pool == null) {
+            writeBlock(compress(block));
+            return;
+        }
+
+        try {
+            queue.put(pool.submit(() -> compress(block)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing chunk", e);
+        }
+    }
+
+    /**
+     * 等待所有数据块写入完成，之后才可以继续访问数据文件
+     */
+    public synchronized void close() throws IOException {
+        if(pool != null) {
+            try {
+                queue.put(END);
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while writing chunk", e);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        Codec codec;
+        while ((codec = codecs.poll()) != null)
+            codec.end();
+        checkError();
+    }
+
+    /**
+     * @return 已写入文件的数据块数，不包括addIndex添加的数据块
+     */
+    public int getChunks() {
+        return chunks;
+    }
+
+    /**
+     * @return 已写入文件的数据块压缩前的数据量
+     */
+    public long getRawBytes() {
+        return rawBytes;
+    }
+
+    /**
+     * @return 已写入文件的数据块压缩后的数据量，没有变小的部分按原始数据计算
+     */
+    public long getStoredBytes() {
+        return storedBytes;
+    }
+
+    /**
+     * 在文件当前位置写入数据块索引，close之后调用。
+     * 索引格式：数据块数量，以及每个数据块的文件位置、之前的总行数和行数
+     * @return 索引在文件中的位置
+     */
+    public long writeIndex() throws IOException {
+        long offset = file.getFilePointer();
+        file.writeInteger(index.size() / 16);
+        file.writeBytes(index.array(), 0, index.size());
+        return offset;
+    }
+
+    private static Part newPart(ChunkBuffer raw) {
+        Part part = new Part();
+        part.raw = raw;
+        return part;
+    }
+
+    /**
+     * 压缩数据块的各个部分，压缩后没有变小的部分保留原始数据
+     */
+    private Block compress(Block block) {
+        long tick = System.nanoTime();
+        Codec codec = codecs.poll();
+        if(codec == null)
+            codec = codecFactory.get();
+        try {
+            if(codec.getId() != Codec.NONE) {
+                for(Part part : block.parts) {
+                    if(part.raw.size() == 0)
+                        continue;
+
+                    ChunkBuffer data = newChunk();
+                    codec.compress(part.raw, data);
+                    if(data.size() < part.raw.size()) {
+                        part.data = data;
+                        part.codec = codec.getId();
+                    }
+                    else
+                        buffers.offer(data);
+                }
+            }
+        } finally {
+            codecs.offer(codec);
+        }
+        if(metrics != null)
+            metrics.add("compress", System.nanoTime() - tick);
+        return block;
+    }
+
+    private void writeLoop() {
+        while (true) {
+            Future<Block> future;
+            try {
+                future = queue.take();
+            } catch (InterruptedException e) {
+                error = e;
+                return;
+            }
+            if(future == END)
+                return;
+
+            //出错后继续取出队列中的数据块，避免调用线程阻塞
+            if(error != null)
+                continue;
+            try {
+                writeBlock(future.get());
+            } catch (ExecutionException e) {
+                error = e.getCause();
+            } catch (Throwable e) {
+                error = e;
+            }
+        }
+    }
+
+    /**
+     * 写入数据块，写入后回收缓冲区
+     */
+    private void writeBlock(Block block) throws IOException {
+        long tick = System.nanoTime();
+        addIndex(file.getFilePointer(), block.rows);
+
+        file.writeByte((byte) (block.columns == null ? StartFlag.DataRow : StartFlag.ColumnChunk).ordinal());
+        file.writeInteger(block.rows);
+        block.stats.setRows(block.rows);
+        block.stats.write(file);
+
+        long raw = 0, stored = 0;
+        for(Part part : block.parts) {
+            file.writeChunk(part.codec, part.raw.size(), part.data != null ? part.data : part.raw);
+            raw += part.raw.size();
+            stored += part.data != null ? part.data.size() : part.raw.size();
+            if(part.data != null)
+                buffers.offer(part.data);
+        }
+        rawBytes += raw;
+        storedBytes += stored;
+        chunks += 1;
+        if(metrics != null)
+            metrics.add("write", System.nanoTime() - tick);
+
+        if(block.columns == null)
+            buffers.offer(block.chunk);
+        else
+            columnChunks.offer(block.columns);
+
+        if(block.checkpoint != null && checkpointListener != null)
+            checkpointListener.onCheckpoint(block.checkpoint, file.getFilePointer(), indexRows);
+    }
+
+    private void checkError() throws IOException {
+        if(error instanceof IOException)
+            throw (IOException) error;
+        else if(error != null)
+            throw new IOException(error.getMessage(), error);
+    }
+}
@@ -0,0 +1,75 @@
+package org.yuyun.dbtool;
+
+/**
+ * 列式数据块：每列一个空值位图和一个值缓冲区，两者分别压缩。
+ * 值缓冲区只保存非空值，编码与ChunkBuffer相同；位图第r位为1表示第r行为空，
+ * 位图长度可以短于行数，缺少的部分视为非空，整列没有空值时位图为空。
+ */
+public class ColumnChunk {
+    private static final int INITIAL_COLUMN_SIZE = 4 * 1024;
+
+    private final ChunkBuffer[] nulls;
+    private final ChunkBuffer[] values;
+    private int rows = 0;
+
+    public ColumnChunk(int columns) {
+        this.nulls = new ChunkBuffer[columns];
+        this.values = new ChunkBuffer[columns];
+        for(int i=0; i<columns; i++) {
+            nulls[i] = new ChunkBuffer(64);
+            values[i] = new ChunkBuffer(INITIAL_COLUMN_SIZE);
+        }
+    }
+
+    public int getColumnCount() {
+        return values.length;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public void reset() {
+        for(int i=0; i<values.length; i++) {
+            nulls[i].reset();
+            values[i].reset();
+        }
+        rows = 0;
+    }
+
+    /**
+     * 开始新的一行，之后写入各列的值或调用setNull
+     */
+    public void addRow() {
+        rows += 1;
+    }
+
+    /**
+     * 将当前行的指定列标记为空
+     */
+    public void setNull(int column) {
+        ChunkBuffer bitmap = nulls[column];
+        int row = rows - 1;
+        while (bitmap.size() <= (row >> 3))
+            bitmap.writeByte((byte) 0);
+        bitmap.array()[row >> 3] |= (byte) (1 << (row & 7));
+    }
+
+    public ChunkBuffer getNulls(int column) {
+        return nulls[column];
+    }
+
+    public ChunkBuffer getValues(int column) {
+        return values[column];
+    }
+
+    /**
+     * @return 所有位图和值缓冲区的原始大小
+     */
+    public int size() {
+        int size = 0;
+        for(int i=0; i<values.length; i++)
+            size += nulls[i].size() + values[i].size();
+        return size;
+    }
+}
@@ -1,37 +1,118 @@
 package org.yuyun.dbtool;
 
+import org.yuyun.dbtool.codec.Codec;
+
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.sql.Blob;
-import java.sql.SQLException;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 import static org.yuyun.dbtool.processor.Processor.*;
 
 public class DataFile {
+    /**
+     * 表示标准输入/标准输出的文件名
+     */
+    public static final String STDIO = "-";
+
+    /**
+     * 统计写入的字节数，作为不能定位的输出流的文件位置
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count += 1;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * 从文件中读取的未解压的数据块
+     */
+    public static class RawChunk {
+        public final byte codec;
+        public final int rawSize;
+        public final byte[] data;
+
+        RawChunk(byte codec, int rawSize, byte[] data) {
+            this.codec = codec;
+            this.rawSize = rawSize;
+            this.data = data;
+        }
+    }
+
+    /**
+     * 解压实例缓存的大小，大于所有压缩算法编号
+     */
+    public static final int CODECS = 4;
+
     private RandomAccessFile file = null;
+    private CountingOutputStream stream = null;
     private DataOutput out = null;
     private DataInput in = null;
     private final ByteBuffer bb = ByteBuffer.allocate(8);
+    private short format = FILE_FORMAT;
+    private final Codec[] codecs = new Codec[CODECS];
+    private Metrics metrics = null;
 
     public DataFile(String name, String mode) throws FileNotFoundException {
         file = new RandomAccessFile(name, mode);
         if(mode.contains("w"))
             out = file;
         in = file;
-        bb.mark();
     }
 
     public DataFile(DataOutputStream os) {
         this.out = os;
-        bb.mark();
     }
 
     public DataFile(DataInputStream is) {
         this.in = is;
-        bb.mark();
+    }
+
+    /**
+     * 打开要读取的数据文件
+     * @param name 文件名，为"-"时读取标准输入
+     */
+    public static DataFile openInput(String name) throws FileNotFoundException {
+        if(name.equals(STDIO))
+            return new DataFile(new DataInputStream(new BufferedInputStream(System.in, 64 * 1024)));
+        return new DataFile(name, "r");
+    }
+
+    /**
+     * 创建要写入的数据文件，删除已有的文件
+     * @param name 文件名，为"-"时写入标准输出，此时不能定位
+     */
+    public static DataFile openOutput(String name) throws FileNotFoundException {
+        if(name.equals(STDIO)) {
+            DataFile file = new DataFile((DataOutputStream) null);
+            file.stream = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 64 * 1024));
+            file.out = new DataOutputStream(file.stream);
+            return file;
+        }
+
+        new File(name).delete();
+        return new DataFile(name, "rw");
+    }
+
+    /**
+     * @return 是否可以定位，读写标准输入/标准输出时不能定位
+     */
+    public boolean isSeekable() {
+        return file != null;
     }
 
     public void checkFileHeader() throws IOException {
@@ -43,15 +124,24 @@ public class DataFile {
         }
 
         //写文件格式版本
-        short format = (short) readShort();
-        if(format != FILE_FORMAT) {
-            printMsg(LogLevel.ERROR, String.format("File format version '%d' is not support, expect '%d'.", format, FILE_FORMAT));
+        format = (short) readShort();
+        if(format < MIN_FILE_FORMAT || format > FILE_FORMAT) {
+            printMsg(LogLevel.ERROR, String.format("File format version '%d' is not support, expect '%d' to '%d'.", format, MIN_FILE_FORMAT, FILE_FORMAT));
             close();
             System.exit(1);
         }
     }
 
+    /**
+     * @return 文件格式版本，读取文件头之后有效
+     */
+    public short getFormat() {
+        return format;
+    }
+
     public long getFilePointer() throws IOException {
+        if(stream != null)
+            return stream.count;
         return file.getFilePointer();
     }
 
@@ -59,9 +149,39 @@ public class DataFile {
         file.seek(pos);
     }
 
+    /**
+     * 截断或扩展文件
+     */
+    public void setLength(long length) throws IOException {
+        file.setLength(length);
+    }
+
+    /**
+     * 将已写入的数据刷新到磁盘
+     */
+    public void sync() throws IOException {
+        file.getFD().sync();
+    }
+
+    public void writeBytes(byte[] bytes, int off, int len) throws IOException {
+        out.write(bytes, off, len);
+    }
+
+    public void readFully(byte[] bytes) throws IOException {
+        in.readFully(bytes);
+    }
+
     public void close() throws IOException {
+        for(int i=0; i<codecs.length; i++) {
+            if(codecs[i] != null) {
+                codecs[i].end();
+                codecs[i] = null;
+            }
+        }
         if(file != null)
             file.close();
+        if(stream != null)
+            stream.flush();
     }
 
     public void writeByte(byte value) throws IOException {
@@ -73,56 +193,46 @@ public class DataFile {
     }
 
     public void writeShort(short value) throws IOException {
-        bb.reset();
-        bb.asShortBuffer().put(value);
+        bb.putShort(0, value);
         out.write(bb.array(), 0, 2);
     }
 
     public int readShort() throws IOException {
-        bb.reset();
         in.readFully(bb.array(), 0, 2);
-        return bb.getShort();
+        return bb.getShort(0);
     }
 
     public void writeInteger(int value) throws IOException {
-        bb.reset();
-        bb.asIntBuffer().put(value);
+        bb.putInt(0, value);
         out.write(bb.array(), 0, 4);
     }
 
     public int readInteger() throws IOException {
-        bb.reset();
         in.readFully(bb.array(), 0, 4);
-        return bb.getInt();
+        return bb.getInt(0);
     }
 
     public void writeLong(long value) throws IOException {
-        bb.reset();
-        bb.asLongBuffer().put(value);
+        bb.putLong(0, value);
         out.write(bb.array(), 0, 8);
     }
 
     public long readLong() throws IOException {
-        bb.reset();
         in.readFully(bb.array(), 0, 8);
-        return bb.getLong();
+        return bb.getLong(0);
     }
 
     public void writeDouble(double value) throws IOException {
-        bb.reset();
-        bb.asDoubleBuffer().put(value);
+        bb.putDouble(0, value);
         out.write(bb.array(), 0, 8);
     }
 
     public double readDouble() throws IOException {
-        bb.reset();
         in.readFully(bb.array(), 0, 8);
-        return bb.getDouble();
+        return bb.getDouble(0);
     }
 
     public void writeString(String value) throws IOException {
-        bb.reset();
-
         int len = 0;
         byte[] data = null;
         if(value != null) {
@@ -135,8 +245,6 @@ public class DataFile {
     }
 
     public String readString() throws IOException {
-        bb.reset();
-
         int len = readInteger();
         if(len == 0)
             return null;
@@ -147,87 +255,98 @@ public class DataFile {
         }
     }
 
-
-    public void writeDate(java.util.Date value) throws IOException {
-        long x = 0;
-        if(value != null) {
-            x = value.getTime();
-            x /= 3600 * 1000;
-        }
-        writeInteger((int) x);
+    /**
+     * 写入数据块（格式版本3），压缩可以在其他线程中完成
+     * @param codec 压缩算法编号
+     * @param rawSize 原始数据长度
+     * @param data 压缩后的数据
+     */
+    public void writeChunk(byte codec, int rawSize, ChunkBuffer data) throws IOException {
+        writeByte(codec);
+        writeInteger(rawSize);
+        writeInteger(data.size());
+        out.write(data.array(), 0, data.size());
     }
 
-    public java.util.Date readDate() throws IOException {
-        long x = readInteger();
-        if(x == 0)
-            return null;
-
-        x *= 3600 * 1000;
-        return new java.util.Date(x);
+    /**
+     * 读取并解压数据块，格式版本2的数据块固定为GZIP压缩
+     * @return 原始数据
+     */
+    public byte[] readChunk() throws IOException {
+        if(format < 3)
+            return readCompressBinary();
+
+        RawChunk chunk = readRawChunk();
+        long tick = metrics != null ? System.nanoTime() : 0;
+        byte[] raw = inflate(chunk, codecs);
+        if(metrics != null && chunk.codec != Codec.NONE)
+            metrics.add("inflate", System.nanoTime() - tick);
+        return raw;
     }
 
-    public void writeDateTime(java.util.Date value) throws IOException {
-        long x = 0;
-        if(value != null)
-            x = value.getTime();
-        writeLong(x);
+    /**
+     * 读取数据块（格式版本3及以上）但不解压，解压可以在其他线程中通过inflate完成
+     */
+    public RawChunk readRawChunk() throws IOException {
+        long tick = metrics != null ? System.nanoTime() : 0;
+        byte id = (byte) readByte();
+        int rawSize = readInteger();
+        int len = readInteger();
+        byte[] data = new byte[len];
+        in.readFully(data);
+        if(metrics != null)
+            metrics.add("read", System.nanoTime() - tick);
+        return new RawChunk(id, rawSize, data);
     }
 
-    public java.util.Date readDateTime() throws IOException {
-        long x = readLong();
-        if(x == 0)
-            return null;
-        else
-            return new java.util.Date(x);
+    /**
+     * 解压数据块
+     * @param codecs 按编号缓存的解压实例，只能由当前线程使用
+     * @return 原始数据
+     */
+    public static byte[] inflate(RawChunk chunk, Codec[] codecs) throws IOException {
+        byte id = chunk.codec;
+        if(id == Codec.NONE)
+            return chunk.data;
+
+        if(id < 0 || id >= codecs.length)
+            throw new IOException(String.format("Unsupported codec id: %d", id));
+        if(codecs[id] == null)
+            codecs[id] = Codec.create(id);
+
+        byte[] raw = new byte[chunk.rawSize];
+        codecs[id].decompress(chunk.data, 0, chunk.data.length, raw, chunk.rawSize);
+        return raw;
     }
 
-    public void writeBinary(Blob blob) throws IOException, SQLException {
-        if(blob == null) {
-            writeInteger(0);
-            return;
-        }
-
-        InputStream is = blob.getBinaryStream();
-        int len = is.available();
-        writeInteger(len);
-
-        if(len > 0) {
-            byte[] bytes = new byte[4096];
-            while(len > 0) {
-                int n = is.read(bytes);
-                if(n == -1)
-                    break;
-                if(n > 0) {
-                    len -= n;
-                    out.write(bytes, 0, n);
-                }
-            }
-        }
+    /**
+     * 设置后readChunk累计read（读取）和inflate（解压）阶段的耗时
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
     }
 
-    public byte[] readBinary() throws IOException {
-        int len = readInteger();
-        if(len == 0)
-            return null;
-
-        byte[] bytes = new byte[len];
-        in.readFully(bytes);
-        return bytes;
+    /**
+     * 跳过一个数据块（格式版本3及以上），不读取数据
+     * @return 数据块的原始数据长度
+     */
+    public int skipChunk() throws IOException {
+        readByte();
+        int rawSize = readInteger();
+        skipBytes(readInteger());
+        return rawSize;
     }
 
-    public void writeCompressBinary(byte[] bytes) throws IOException {
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        GZIPOutputStream gzip;
-        try {
-            gzip = new GZIPOutputStream(os);
-            gzip.write(bytes);
-            gzip.close();
-        } catch (IOException e) {
-            throw e;
+    /**
+     * 跳过指定的字节数，不足时抛出EOFException
+     */
+    public void skipBytes(int len) throws IOException {
+        while (len > 0) {
+            int n = in.skipBytes(len);
+            if(n <= 0)
+                throw new EOFException();
+            len -= n;
         }
-        byte[] data = os.toByteArray();
-        writeInteger(data.length);
-        out.write(data);
     }
 
     public byte[] readCompressBinary() throws IOException {
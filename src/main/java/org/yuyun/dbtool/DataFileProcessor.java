@@ -11,4 +11,18 @@ public interface DataFileProcessor {
     boolean onRow(int row, Object[] fields);
     void onRowEnd(int rows);
     int getStartRow();
+
+    /**
+     * 数据文件是增量导出的文件时，在onSummary之前调用
+     */
+    default void onDelta(DeltaInfo delta) {
+    }
+
+    /**
+     * 在onSummary之后调用，列式数据块中不需要的列不解压也不解码，onRow中对应的值为null
+     * @return 每列是否需要读取，返回null时读取所有列
+     */
+    default boolean[] getRequiredFields() {
+        return null;
+    }
 }
@@ -0,0 +1,58 @@
+package org.yuyun.dbtool;
+
+import java.io.IOException;
+
+/**
+ * 增量导出的文件头信息：只包含水位列的值在(from, to]之间的行，
+ * base为上一次导出的数据文件，按导出顺序依次导入即可得到最新的数据
+ */
+public class DeltaInfo {
+    private final String base;
+    private final String column;
+    private final String from;
+    private final String to;
+
+    /**
+     * @param base 上一次导出的数据文件，首次导出为null
+     * @param column 水位列
+     * @param from 上一次导出的水位（不含），首次导出为null
+     * @param to 本次导出的水位（含），表中没有数据时为null
+     */
+    public DeltaInfo(String base, String column, String from, String to) {
+        this.base = base;
+        this.column = column;
+        this.from = from;
+        this.to = to;
+    }
+
+    public String getBase() {
+        return base;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public void write(DataFile file) throws IOException {
+        file.writeString(base);
+        file.writeString(column);
+        file.writeString(from);
+        file.writeString(to);
+    }
+
+    public static DeltaInfo read(DataFile file) throws IOException {
+        String base = file.readString();
+        String column = file.readString();
+        String from = file.readString();
+        String to = file.readString();
+        return new DeltaInfo(base, column, from, to);
+    }
+}
@@ -0,0 +1,55 @@
+package org.yuyun.dbtool;
+
+import java.util.Arrays;
+
+/**
+ * 数据块内按列的delta-of-delta编码：每列第一个值原样写入，之后写入本次差值与上次差值的差。
+ * 单调递增且间隔稳定的时间（eg.事件时间、按秒生成的记录）编码后多为0或很小的数，varint只占1个字节。
+ * 空值不参与计算，状态随数据块重置，写入和读取使用同样的顺序。
+ */
+public class DeltaOfDelta {
+    private final boolean[] started;
+    private final long[] last;
+    private final long[] lastDelta;
+
+    /**
+     * @param columns 列数
+     */
+    public DeltaOfDelta(int columns) {
+        this.started = new boolean[columns];
+        this.last = new long[columns];
+        this.lastDelta = new long[columns];
+    }
+
+    /**
+     * 开始新的数据块
+     */
+    public void reset() {
+        Arrays.fill(started, false);
+    }
+
+    /**
+     * @return 需要写入的值
+     */
+    public long encode(int column, long value) {
+        long delta = started[column] ? value - last[column] : 0;
+        long x = started[column] ? delta - lastDelta[column] : value;
+        started[column] = true;
+        last[column] = value;
+        lastDelta[column] = delta;
+        return x;
+    }
+
+    /**
+     * @param x 读取的值
+     * @return 原始值
+     */
+    public long decode(int column, long x) {
+        long delta = started[column] ? lastDelta[column] + x : 0;
+        long value = started[column] ? last[column] + delta : x;
+        started[column] = true;
+        last[column] = value;
+        lastDelta[column] = delta;
+        return value;
+    }
+}
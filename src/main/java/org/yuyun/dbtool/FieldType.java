@@ -8,7 +8,9 @@ public enum FieldType {
     Date,
     DateTime,
     Binary,
-    Null;
+    Null,
+    Decimal,    //定点数，按列的小数位数存储为整数，见ChunkBuffer.writeDecimal
+    DateTimeTZ; //带时区的时间，读取为OffsetDateTime
 
     public static FieldType fromInt(int v) {
         if(v == Integer.ordinal())
@@ -27,6 +29,10 @@ public enum FieldType {
             return Binary;
         else if(v == Null.ordinal())
             return Null;
+        else if(v == Decimal.ordinal())
+            return Decimal;
+        else if(v == DateTimeTZ.ordinal())
+            return DateTimeTZ;
         else
             return null;
     }
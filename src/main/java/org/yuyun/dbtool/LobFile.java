@@ -0,0 +1,207 @@
+package org.yuyun.dbtool;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 大对象旁路文件（数据文件名.lob）：超过阈值的BLOB/CLOB按原样依次追加到旁路文件，
+ * 数据块中只保存引用（长度-1、位置、长度），导出和导入时都以流的方式读写，不把整个值放入内存。
+ * 文本按UTF-8编码存储。写入时第一次追加才创建文件，读取时第一次打开引用才打开文件。
+ */
+public class LobFile implements Closeable {
+    /**
+     * 数据块中表示大对象引用的长度值
+     */
+    public static final int REF = -1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String filename;
+    private final boolean writable;
+    private final int threshold;
+    private RandomAccessFile file = null;
+    private FileChannel channel = null;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * @param filename 数据文件路径，旁路文件为数据文件名.lob
+     * @param writable 是否用于写入
+     * @param threshold 写入时超过多少字节的值存储到旁路文件
+     */
+    public LobFile(String filename, boolean writable, int threshold) {
+        this.filename = filename + ".lob";
+        this.writable = writable;
+        this.threshold = threshold;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * 删除已有的旁路文件
+     */
+    public void delete() {
+        new File(filename).delete();
+    }
+
+    /**
+     * @return 已写入的长度
+     */
+    public synchronized long length() throws IOException {
+        if(channel == null)
+            return new File(filename).length();
+        return channel.size();
+    }
+
+    /**
+     * 截断到指定长度，之后从该位置继续追加
+     */
+    public synchronized void truncate(long length) throws IOException {
+        open();
+        channel.truncate(length);
+    }
+
+    /**
+     * 将写入的数据刷新到磁盘
+     */
+    public synchronized void sync() throws IOException {
+        if(channel != null)
+            channel.force(false);
+    }
+
+    /**
+     * 追加二进制数据：先写入已经读取的部分，再写入流中剩余的数据
+     * @return 大对象的位置和长度
+     */
+    public synchronized long[] append(byte[] head, int off, int len, InputStream rest) throws IOException {
+        open();
+        long offset = channel.size();
+        channel.position(offset);
+        writeFully(ByteBuffer.wrap(head, off, len));
+
+        int n;
+        while ((n = rest.read(buffer)) != -1)
+            writeFully(ByteBuffer.wrap(buffer, 0, n));
+        return new long[] {offset, channel.size() - offset};
+    }
+
+    /**
+     * 追加文本，按UTF-8编码：先写入已经读取的部分，再写入流中剩余的字符
+     * @return 大对象的位置和字节长度
+     */
+    public synchronized long[] append(String head, Reader rest) throws IOException {
+        open();
+        long offset = channel.size();
+        channel.position(offset);
+
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        ByteBuffer out = ByteBuffer.wrap(buffer);
+        CharBuffer in = CharBuffer.allocate(Math.max(BUFFER_SIZE, head.length()));
+        in.put(head);
+        boolean eof = false;
+        while (true) {
+            in.flip();
+            while (true) {
+                CoderResult cr = encoder.encode(in, out, eof);
+                if(cr.isError())
+                    cr.throwException();
+                out.flip();
+                writeFully(out);
+                out.clear();
+                if(!cr.isOverflow())
+                    break;
+            }
+
+            in.compact();
+            if(eof)
+                break;
+            //代理对可能跨越两次读取，未编码的字符保留在缓冲区中
+            int n = rest.read(in.array(), in.position(), in.remaining());
+            if(n == -1)
+                eof = true;
+            else
+                in.position(in.position() + n);
+        }
+        encoder.flush(out);
+        out.flip();
+        writeFully(out);
+        return new long[] {offset, channel.size() - offset};
+    }
+
+    /**
+     * 读取大对象，多个流可以同时打开，按位置读取互不影响
+     */
+    public synchronized InputStream openStream(long offset, long length) throws IOException {
+        open();
+        if(offset + length > channel.size())
+            throw new IOException(String.format("LOB file %s is truncated", filename));
+
+        return new InputStream() {
+            private long pos = offset;
+            private final long end = offset + length;
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if(pos >= end)
+                    return -1;
+                int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - pos)), pos);
+                if(n == -1)
+                    throw new EOFException(String.format("LOB file %s is truncated", filename));
+                pos += n;
+                return n;
+            }
+
+            @Override
+            public long skip(long n) {
+                n = Math.max(0, Math.min(n, end - pos));
+                pos += n;
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return (int) Math.min(Integer.MAX_VALUE, end - pos);
+            }
+        };
+    }
+
+    private void open() throws IOException {
+        if(channel != null)
+            return;
+        if(!writable && !new File(filename).exists())
+            throw new FileNotFoundException(String.format("LOB file %s not found", filename));
+
+        file = new RandomAccessFile(filename, writable ? "rw" : "r");
+        channel = file.getChannel();
+    }
+
+    private void writeFully(ByteBuffer bb) throws IOException {
+        while (bb.hasRemaining())
+            channel.write(bb);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if(file != null) {
+            file.close();
+            file = null;
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.yuyun.dbtool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 读取数据文件时存储在旁路文件中的大对象，在String或Binary列中代替String或byte[]，
+ * 使用时再打开流读取
+ */
+public class LobRef {
+    private final LobFile file;
+    private final long offset;
+    private final long length;
+
+    public LobRef(LobFile file, long offset, long length) {
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * @return 字节长度，文本为UTF-8编码后的长度
+     */
+    public long getLength() {
+        return length;
+    }
+
+    public InputStream openStream() throws IOException {
+        return file.openStream(offset, length);
+    }
+
+    public Reader openReader() throws IOException {
+        return new InputStreamReader(openStream(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("<LOB %,d bytes>", length);
+    }
+}
@@ -0,0 +1,96 @@
+package org.yuyun.dbtool;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按阶段累计耗时，并记录每批的吞吐量和堆内存峰值，用于判断处理慢在数据库还是本地CPU。
+ * 阶段在构造时确定，之后可以在多个线程中累计，并行执行的阶段（eg.压缩）的耗时之和可能超过总耗时。
+ */
+public class Metrics {
+    private final Map<String, LongAdder> phases = new LinkedHashMap<>();
+    private final List<Double> throughputs = new ArrayList<>();
+
+    /**
+     * @param phases 阶段名称，按输出顺序排列
+     */
+    public Metrics(String... phases) {
+        for(String phase : phases)
+            this.phases.put(phase, new LongAdder());
+    }
+
+    /**
+     * 累计阶段耗时，未定义的阶段忽略
+     * @param nanos System.nanoTime()之差
+     */
+    public void add(String phase, long nanos) {
+        LongAdder adder = phases.get(phase);
+        if(adder != null)
+            adder.add(nanos);
+    }
+
+    /**
+     * @return 阶段累计的耗时（纳秒）
+     */
+    public long get(String phase) {
+        LongAdder adder = phases.get(phase);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /**
+     * 记录一批的吞吐量
+     * @param rows 该批的行数
+     * @param nanos 该批的耗时
+     */
+    public synchronized void addBatch(int rows, long nanos) {
+        if(rows > 0 && nanos > 0)
+            throughputs.add(rows * 1e9 / nanos);
+    }
+
+    /**
+     * 输出到日志JSON：phases为各阶段耗时（毫秒），throughput为每批吞吐量（行/秒）的百分位数，peakHeap为堆内存峰值（字节）
+     */
+    public synchronized Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        Map<String, Long> times = new LinkedHashMap<>();
+        for(Map.Entry<String, LongAdder> entry : phases.entrySet())
+            times.put(entry.getKey(), entry.getValue().sum() / 1000000);
+        map.put("phases", times);
+
+        map.put("batches", throughputs.size());
+        if(!throughputs.isEmpty()) {
+            List<Double> sorted = new ArrayList<>(throughputs);
+            Collections.sort(sorted);
+            Map<String, Long> percentiles = new LinkedHashMap<>();
+            percentiles.put("min", Math.round(sorted.get(0)));
+            percentiles.put("p50", percentile(sorted, 50));
+            percentiles.put("p90", percentile(sorted, 90));
+            percentiles.put("p99", percentile(sorted, 99));
+            percentiles.put("max", Math.round(sorted.get(sorted.size() - 1)));
+            map.put("throughput", percentiles);
+        }
+
+        map.put("peakHeap", getPeakHeap());
+        return map;
+    }
+
+    private static long percentile(List<Double> sorted, int p) {
+        int index = (int) Math.ceil(sorted.size() * p / 100.0) - 1;
+        return Math.round(sorted.get(Math.max(0, Math.min(sorted.size() - 1, index))));
+    }
+
+    /**
+     * @return 各堆内存区的使用量峰值之和
+     */
+    private static long getPeakHeap() {
+        long peak = 0;
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if(pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null)
+                peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+}
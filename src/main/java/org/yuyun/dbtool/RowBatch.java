@@ -0,0 +1,309 @@
+package org.yuyun.dbtool;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * 按列存储的一批行，数值和时间存放在基本类型的列向量中，不为每个值创建对象。
+ * Integer为int，Long为long，Double为double，Date为java.sql.Date的毫秒数，DateTime为epoch微秒和不足1微秒的纳秒，
+ * DateTimeTZ另外记录时区偏移的秒数。Decimal、String（String或LobRef）和Binary（byte[]或LobRef）仍为对象。
+ * 空值记录在每列的位图中，为空时列向量中的值无意义。
+ */
+public class RowBatch {
+    private final FieldType[] fieldTypes;
+    private int capacity = 0;
+    private int size = 0;
+    private int firstRow = 0;
+    private final long[][] nulls;
+    private final int[][] ints;         //Integer的值、DateTimeTZ的时区偏移
+    private final long[][] longs;       //Long的值、Date的毫秒数、DateTime和DateTimeTZ的微秒
+    private final int[][] nanos;        //DateTime和DateTimeTZ不足1微秒的纳秒
+    private final double[][] doubles;
+    private final Object[][] objects;
+
+    public RowBatch(FieldType[] fieldTypes) {
+        this.fieldTypes = fieldTypes;
+        this.nulls = new long[fieldTypes.length][];
+        this.ints = new int[fieldTypes.length][];
+        this.longs = new long[fieldTypes.length][];
+        this.nanos = new int[fieldTypes.length][];
+        this.doubles = new double[fieldTypes.length][];
+        this.objects = new Object[fieldTypes.length][];
+    }
+
+    public FieldType[] getFieldTypes() {
+        return fieldTypes;
+    }
+
+    /**
+     * @return 行数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return 第一行在数据文件中的行号，从1开始
+     */
+    public int getFirstRow() {
+        return firstRow;
+    }
+
+    public void setFirstRow(int firstRow) {
+        this.firstRow = firstRow;
+    }
+
+    /**
+     * 清空并准备写入指定的行数，已有的列向量重复使用
+     */
+    public void reset(int rows) {
+        size = 0;
+        ensureCapacity(rows);
+        for(long[] bits : nulls) {
+            if(bits != null)
+                Arrays.fill(bits, 0);
+        }
+    }
+
+    /**
+     * 设置行数，写入的行的序号需小于该值
+     */
+    public void setSize(int size) {
+        ensureCapacity(size);
+        this.size = size;
+    }
+
+    private void ensureCapacity(int rows) {
+        if(rows <= capacity)
+            return;
+
+        int n = Math.max(rows, capacity * 3 / 2);
+        for(int i=0; i<fieldTypes.length; i++) {
+            nulls[i] = nulls[i] == null ? new long[(n + 63) >> 6] : Arrays.copyOf(nulls[i], (n + 63) >> 6);
+            switch (fieldTypes[i]) {
+                case Integer:
+                    ints[i] = ints[i] == null ? new int[n] : Arrays.copyOf(ints[i], n);
+                    break;
+                case Long:
+                case Date:
+                    longs[i] = longs[i] == null ? new long[n] : Arrays.copyOf(longs[i], n);
+                    break;
+                case DateTimeTZ:
+                    ints[i] = ints[i] == null ? new int[n] : Arrays.copyOf(ints[i], n);
+                    longs[i] = longs[i] == null ? new long[n] : Arrays.copyOf(longs[i], n);
+                    nanos[i] = nanos[i] == null ? new int[n] : Arrays.copyOf(nanos[i], n);
+                    break;
+                case DateTime:
+                    longs[i] = longs[i] == null ? new long[n] : Arrays.copyOf(longs[i], n);
+                    nanos[i] = nanos[i] == null ? new int[n] : Arrays.copyOf(nanos[i], n);
+                    break;
+                case Double:
+                    doubles[i] = doubles[i] == null ? new double[n] : Arrays.copyOf(doubles[i], n);
+                    break;
+                case Decimal:
+                case String:
+                case Binary:
+                    objects[i] = objects[i] == null ? new Object[n] : Arrays.copyOf(objects[i], n);
+                    break;
+            }
+        }
+        capacity = n;
+    }
+
+    public boolean isNull(int column, int row) {
+        return (nulls[column][row >> 6] & (1L << row)) != 0;
+    }
+
+    public void setNull(int column, int row) {
+        nulls[column][row >> 6] |= 1L << row;
+        if(objects[column] != null)
+            objects[column][row] = null;
+    }
+
+    public int getInt(int column, int row) {
+        return ints[column][row];
+    }
+
+    public void setInt(int column, int row, int value) {
+        ints[column][row] = value;
+    }
+
+    /**
+     * @return Long的值、Date的毫秒数或DateTime、DateTimeTZ的epoch微秒
+     */
+    public long getLong(int column, int row) {
+        return longs[column][row];
+    }
+
+    public void setLong(int column, int row, long value) {
+        longs[column][row] = value;
+    }
+
+    public double getDouble(int column, int row) {
+        return doubles[column][row];
+    }
+
+    public void setDouble(int column, int row, double value) {
+        doubles[column][row] = value;
+    }
+
+    /**
+     * @return BigDecimal、String、byte[]或LobRef
+     */
+    public Object getObject(int column, int row) {
+        return objects[column][row];
+    }
+
+    public void setObject(int column, int row, Object value) {
+        objects[column][row] = value;
+    }
+
+    /**
+     * @return DateTime或DateTimeTZ不足1微秒的纳秒
+     */
+    public int getNanos(int column, int row) {
+        return nanos[column][row];
+    }
+
+    /**
+     * 设置DateTime或DateTimeTZ的值
+     * @param micros epoch微秒
+     * @param nanos 不足1微秒的纳秒
+     */
+    public void setTime(int column, int row, long micros, int nanos) {
+        longs[column][row] = micros;
+        this.nanos[column][row] = nanos;
+    }
+
+    /**
+     * 设置DateTimeTZ的时区偏移
+     */
+    public void setOffset(int column, int row, int seconds) {
+        ints[column][row] = seconds;
+    }
+
+    public java.sql.Date getDate(int column, int row) {
+        return new java.sql.Date(longs[column][row]);
+    }
+
+    public Timestamp getTimestamp(int column, int row) {
+        long micros = longs[column][row];
+        Timestamp ts = new Timestamp(Math.floorDiv(micros, 1000000L) * 1000);
+        ts.setNanos((int) Math.floorMod(micros, 1000000L) * 1000 + nanos[column][row]);
+        return ts;
+    }
+
+    public OffsetDateTime getOffsetDateTime(int column, int row) {
+        long micros = longs[column][row];
+        Instant instant = Instant.ofEpochSecond(Math.floorDiv(micros, 1000000L), Math.floorMod(micros, 1000000L) * 1000 + nanos[column][row]);
+        return OffsetDateTime.ofInstant(instant, ZoneOffset.ofTotalSeconds(ints[column][row]));
+    }
+
+    /**
+     * 按逐行读取的值设置一行，见ChunkReader.next和ImportProcessor.onRow
+     * @param fields 各列的值，数值为Number，日期和时间为java.util.Date或OffsetDateTime
+     */
+    public void setRow(int row, Object[] fields) {
+        for(int i=0; i<fieldTypes.length; i++) {
+            Object value = fields[i];
+            if(value == null) {
+                setNull(i, row);
+                continue;
+            }
+
+            nulls[i][row >> 6] &= ~(1L << row);
+            switch (fieldTypes[i]) {
+                case Integer:
+                    ints[i][row] = ((Number) value).intValue();
+                    break;
+                case Long:
+                    longs[i][row] = ((Number) value).longValue();
+                    break;
+                case Double:
+                    doubles[i][row] = ((Number) value).doubleValue();
+                    break;
+                case Decimal:
+                case String:
+                case Binary:
+                    objects[i][row] = value;
+                    break;
+                case Date:
+                    longs[i][row] = ((java.util.Date) value).getTime();
+                    break;
+                case DateTime:
+                    long millis = ((java.util.Date) value).getTime();
+                    int n = value instanceof Timestamp ? ((Timestamp) value).getNanos() : (int) Math.floorMod(millis, 1000L) * 1000000;
+                    setTime(i, row, Math.floorDiv(millis, 1000L) * 1000000L + n / 1000, n % 1000);
+                    break;
+                case DateTimeTZ:
+                    OffsetDateTime odt = (OffsetDateTime) value;
+                    setTime(i, row, odt.toEpochSecond() * 1000000L + odt.getNano() / 1000, odt.getNano() % 1000);
+                    ints[i][row] = odt.getOffset().getTotalSeconds();
+                    break;
+                case Null:
+                    setNull(i, row);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 复制另一批中的一行到当前批的末尾
+     */
+    public void append(RowBatch src, int row) {
+        int r = size;
+        setSize(size + 1);
+        for(int i=0; i<fieldTypes.length; i++) {
+            if(src.isNull(i, row)) {
+                setNull(i, r);
+                continue;
+            }
+            nulls[i][r >> 6] &= ~(1L << r);
+            if(ints[i] != null)
+                ints[i][r] = src.ints[i][row];
+            if(longs[i] != null)
+                longs[i][r] = src.longs[i][row];
+            if(nanos[i] != null)
+                nanos[i][r] = src.nanos[i][row];
+            if(doubles[i] != null)
+                doubles[i][r] = src.doubles[i][row];
+            if(objects[i] != null)
+                objects[i][r] = src.objects[i][row];
+        }
+    }
+
+    /**
+     * 删除前面的行，用于从数据块中间的行开始处理
+     */
+    public void removeFirst(int rows) {
+        if(rows <= 0)
+            return;
+
+        int n = size - rows;
+        for(int r=0; r<n; r++) {
+            for(int i=0; i<fieldTypes.length; i++) {
+                if(isNull(i, r + rows))
+                    nulls[i][r >> 6] |= 1L << r;
+                else
+                    nulls[i][r >> 6] &= ~(1L << r);
+            }
+        }
+        for(int i=0; i<fieldTypes.length; i++) {
+            if(ints[i] != null)
+                System.arraycopy(ints[i], rows, ints[i], 0, n);
+            if(longs[i] != null)
+                System.arraycopy(longs[i], rows, longs[i], 0, n);
+            if(nanos[i] != null)
+                System.arraycopy(nanos[i], rows, nanos[i], 0, n);
+            if(doubles[i] != null)
+                System.arraycopy(doubles[i], rows, doubles[i], 0, n);
+            if(objects[i] != null)
+                System.arraycopy(objects[i], rows, objects[i], 0, n);
+        }
+        size = n;
+        firstRow += rows;
+    }
+}
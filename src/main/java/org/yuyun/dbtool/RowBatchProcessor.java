@@ -0,0 +1,14 @@
+package org.yuyun.dbtool;
+
+/**
+ * 按批接收数据文件中的行，数值和时间以基本类型的列向量传递，代替逐行回调的onRow。
+ * 按批处理时不调用onRow，onRow可以作为逐行写入的适配（eg.copy命令）。
+ */
+public interface RowBatchProcessor extends DataFileProcessor {
+    /**
+     * 在onSummary之后按行的顺序调用，已去掉起始行之前的行
+     * @param batch 一批行，通常为一个数据块，回调返回后会被下一批重用
+     * @return 处理的行数，小于批的行数时停止读取
+     */
+    int onBatch(RowBatch batch);
+}
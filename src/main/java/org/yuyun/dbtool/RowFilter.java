@@ -0,0 +1,381 @@
+package org.yuyun.dbtool;
+
+import java.math.BigDecimal;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 读取数据文件时的行过滤条件，多个条件之间用and连接，例如：
+ * <pre>
+ *     id between 1000 and 2000 and created >= '2023-01-01' and status = 'PAID' and name is not null
+ * </pre>
+ * 支持的比较：=、!=、&lt;&gt;、&lt;、&lt;=、&gt;、&gt;=、between ... and ...、is null、is not null。
+ * 与SQL相同，空值和任何值比较的结果都不成立。日期的格式为yyyy-MM-dd，时间的格式为yyyy-MM-dd或yyyy-MM-dd HH:mm:ss。
+ * 日期按日历日期（天数）比较，与导出和读取时的时区无关。
+ */
+public class RowFilter {
+    private enum Op {
+        EQ, NE, LT, LE, GT, GE, BETWEEN, IS_NULL, NOT_NULL
+    }
+
+    private static class Condition {
+        int field;
+        Op op;
+        Object value;   //Long、Double、BigDecimal或String，日期为天数（epoch day），时间为毫秒数
+        Object value2;  //between的上界
+    }
+
+    private final FieldType[] fieldTypes;
+    private final List<Condition> conditions = new ArrayList<>();
+
+    private RowFilter(FieldType[] fieldTypes) {
+        this.fieldTypes = fieldTypes;
+    }
+
+    /**
+     * 解析过滤条件
+     * @param text 过滤条件
+     * @param names 数据文件的列名
+     * @param fieldTypes 数据文件的列类型
+     * @return 过滤条件，text为null时返回null
+     */
+    public static RowFilter parse(String text, String[] names, FieldType[] fieldTypes) {
+        if(text == null)
+            return null;
+
+        RowFilter filter = new RowFilter(fieldTypes);
+        List<String> tokens = tokenize(text);
+        int pos = 0;
+        while (true) {
+            if(pos >= tokens.size())
+                throw new RuntimeException(String.format("Bad filter: %s", text));
+
+            Condition c = new Condition();
+            c.field = findField(names, tokens.get(pos++));
+            if(c.field < 0)
+                throw new RuntimeException(String.format("Data file not contain field \"%s\"", tokens.get(pos - 1)));
+
+            String op = pos < tokens.size() ? tokens.get(pos++).toLowerCase() : "";
+            switch (op) {
+                case "=":
+                    c.op = Op.EQ;
+                    break;
+                case "!=":
+                case "<>":
+                    c.op = Op.NE;
+                    break;
+                case "<":
+                    c.op = Op.LT;
+                    break;
+                case "<=":
+                    c.op = Op.LE;
+                    break;
+                case ">":
+                    c.op = Op.GT;
+                    break;
+                case ">=":
+                    c.op = Op.GE;
+                    break;
+                case "between":
+                    c.op = Op.BETWEEN;
+                    break;
+                case "is":
+                    if(pos < tokens.size() && tokens.get(pos).equalsIgnoreCase("not")) {
+                        c.op = Op.NOT_NULL;
+                        pos += 1;
+                    }
+                    else
+                        c.op = Op.IS_NULL;
+                    if(pos >= tokens.size() || !tokens.get(pos++).equalsIgnoreCase("null"))
+                        throw new RuntimeException(String.format("Bad filter: %s", text));
+                    break;
+                default:
+                    throw new RuntimeException(String.format("Bad filter: %s", text));
+            }
+
+            if(c.op != Op.IS_NULL && c.op != Op.NOT_NULL) {
+                if(pos >= tokens.size())
+                    throw new RuntimeException(String.format("Bad filter: %s", text));
+                c.value = parseValue(fieldTypes[c.field], tokens.get(pos++));
+                if(c.op == Op.BETWEEN) {
+                    if(pos + 1 >= tokens.size() || !tokens.get(pos++).equalsIgnoreCase("and"))
+                        throw new RuntimeException(String.format("Bad filter: %s", text));
+                    c.value2 = parseValue(fieldTypes[c.field], tokens.get(pos++));
+                }
+            }
+            filter.conditions.add(c);
+
+            if(pos >= tokens.size())
+                break;
+            if(!tokens.get(pos++).equalsIgnoreCase("and"))
+                throw new RuntimeException(String.format("Bad filter: %s", text));
+        }
+        return filter;
+    }
+
+    /**
+     * 将过滤条件用到的列标记为需要读取
+     */
+    public void addRequiredFields(boolean[] requiredFields) {
+        for(Condition c : conditions)
+            requiredFields[c.field] = true;
+    }
+
+    /**
+     * 根据数据块的统计信息判断数据块中是否可能有满足条件的行
+     */
+    public boolean mayMatch(ChunkStats stats) {
+        for(Condition c : conditions) {
+            int nulls = stats.getNullCount(c.field);
+            if(c.op == Op.IS_NULL) {
+                if(nulls == 0)
+                    return false;
+                continue;
+            }
+            if(nulls >= stats.getRows())
+                return false;
+            if(c.op == Op.NOT_NULL || !stats.hasRange(c.field))
+                continue;
+
+            int cmpMin, cmpMax, cmpMax2 = 0;
+            switch (fieldTypes[c.field]) {
+                case Double:
+                case Decimal:
+                    cmpMin = Double.compare(stats.getMinDouble(c.field), ((Number) c.value).doubleValue());
+                    cmpMax = Double.compare(stats.getMaxDouble(c.field), ((Number) c.value).doubleValue());
+                    if(c.op == Op.BETWEEN)
+                        cmpMax2 = Double.compare(stats.getMinDouble(c.field), ((Number) c.value2).doubleValue());
+                    break;
+                case String:
+                    cmpMin = stats.getMinString(c.field).compareTo((String) c.value);
+                    cmpMax = stats.getMaxString(c.field).compareTo((String) c.value);
+                    if(c.op == Op.BETWEEN)
+                        cmpMax2 = stats.getMinString(c.field).compareTo((String) c.value2);
+                    break;
+                default:
+                    cmpMin = Long.compare(stats.getMinLong(c.field), (Long) c.value);
+                    cmpMax = Long.compare(stats.getMaxLong(c.field), (Long) c.value);
+                    if(c.op == Op.BETWEEN)
+                        cmpMax2 = Long.compare(stats.getMinLong(c.field), (Long) c.value2);
+                    break;
+            }
+
+            boolean match;
+            switch (c.op) {
+                case EQ:
+                    match = cmpMin <= 0 && cmpMax >= 0;
+                    break;
+                case NE:
+                    match = !(cmpMin == 0 && cmpMax == 0);
+                    break;
+                case LT:
+                    match = cmpMin < 0;
+                    break;
+                case LE:
+                    match = cmpMin <= 0;
+                    break;
+                case GT:
+                    match = cmpMax > 0;
+                    break;
+                case GE:
+                    match = cmpMax >= 0;
+                    break;
+                case BETWEEN:
+                    //max >= 下界 且 min <= 上界
+                    match = cmpMax >= 0 && cmpMax2 <= 0;
+                    break;
+                default:
+                    match = true;
+            }
+            if(!match)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * 判断一行是否满足条件
+     */
+    public boolean matches(Object[] row) {
+        for(Condition c : conditions) {
+            Object v = row[c.field];
+            if(c.op == Op.IS_NULL) {
+                if(v != null)
+                    return false;
+                continue;
+            }
+            if(v == null)
+                return false;
+            if(c.op == Op.NOT_NULL)
+                continue;
+            if(v instanceof LobRef)
+                throw new RuntimeException("Filter on large object is not supported");
+
+            int cmp, cmp2 = 0;
+            switch (fieldTypes[c.field]) {
+                case Double:
+                    cmp = Double.compare(((Number) v).doubleValue(), ((Number) c.value).doubleValue());
+                    if(c.op == Op.BETWEEN)
+                        cmp2 = Double.compare(((Number) v).doubleValue(), ((Number) c.value2).doubleValue());
+                    break;
+                case Decimal:
+                    cmp = ((BigDecimal) v).compareTo((BigDecimal) c.value);
+                    if(c.op == Op.BETWEEN)
+                        cmp2 = ((BigDecimal) v).compareTo((BigDecimal) c.value2);
+                    break;
+                case String:
+                    cmp = ((String) v).compareTo((String) c.value);
+                    if(c.op == Op.BETWEEN)
+                        cmp2 = ((String) v).compareTo((String) c.value2);
+                    break;
+                case Date:
+                    long day = toEpochDay((java.util.Date) v);
+                    cmp = Long.compare(day, (Long) c.value);
+                    if(c.op == Op.BETWEEN)
+                        cmp2 = Long.compare(day, (Long) c.value2);
+                    break;
+                case DateTime:
+                    cmp = Long.compare(((java.util.Date) v).getTime(), (Long) c.value);
+                    if(c.op == Op.BETWEEN)
+                        cmp2 = Long.compare(((java.util.Date) v).getTime(), (Long) c.value2);
+                    break;
+                case DateTimeTZ:
+                    long millis = ((OffsetDateTime) v).toInstant().toEpochMilli();
+                    cmp = Long.compare(millis, (Long) c.value);
+                    if(c.op == Op.BETWEEN)
+                        cmp2 = Long.compare(millis, (Long) c.value2);
+                    break;
+                default:
+                    cmp = Long.compare(((Number) v).longValue(), (Long) c.value);
+                    if(c.op == Op.BETWEEN)
+                        cmp2 = Long.compare(((Number) v).longValue(), (Long) c.value2);
+                    break;
+            }
+
+            boolean match;
+            switch (c.op) {
+                case EQ:
+                    match = cmp == 0;
+                    break;
+                case NE:
+                    match = cmp != 0;
+                    break;
+                case LT:
+                    match = cmp < 0;
+                    break;
+                case LE:
+                    match = cmp <= 0;
+                    break;
+                case GT:
+                    match = cmp > 0;
+                    break;
+                case GE:
+                    match = cmp >= 0;
+                    break;
+                case BETWEEN:
+                    match = cmp >= 0 && cmp2 <= 0;
+                    break;
+                default:
+                    match = true;
+            }
+            if(!match)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return 日期值在当前时区的日历日期的天数，格式版本2读取为java.util.Date，之后读取为java.sql.Date
+     */
+    private static long toEpochDay(java.util.Date value) {
+        if(value instanceof java.sql.Date)
+            return ((java.sql.Date) value).toLocalDate().toEpochDay();
+        return new java.sql.Date(value.getTime()).toLocalDate().toEpochDay();
+    }
+
+    private static int findField(String[] names, String name) {
+        for(int i=0; i<names.length; i++) {
+            if(names[i].equalsIgnoreCase(name))
+                return i;
+        }
+        return -1;
+    }
+
+    private static Object parseValue(FieldType fieldType, String text) {
+        try {
+            switch (fieldType) {
+                case Integer:
+                case Long:
+                    return Long.parseLong(text);
+                case Double:
+                    return Double.parseDouble(text);
+                case Decimal:
+                    return new BigDecimal(text);
+                case String:
+                    return text;
+                case Date:
+                    return LocalDate.parse(text).toEpochDay();
+                case DateTime:
+                case DateTimeTZ:
+                    String pattern = text.length() > 10 ? "yyyy-MM-dd HH:mm:ss" : "yyyy-MM-dd";
+                    SimpleDateFormat df = new SimpleDateFormat(pattern);
+                    df.setLenient(false);
+                    return df.parse(text).getTime();
+            }
+        } catch (NumberFormatException | ParseException | DateTimeParseException e) {
+            throw new RuntimeException(String.format("Bad filter value for %s field: %s", fieldType.name(), text), e);
+        }
+        throw new RuntimeException(String.format("Filter on %s field is not supported", fieldType.name()));
+    }
+
+    /**
+     * 拆分为单词、运算符和单引号括起的字符串（两个单引号表示一个单引号）
+     */
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0, n = text.length();
+        while (i < n) {
+            char c = text.charAt(i);
+            if(Character.isWhitespace(c)) {
+                i += 1;
+            }
+            else if(c == '\'') {
+                StringBuilder sb = new StringBuilder();
+                i += 1;
+                while (true) {
+                    if(i >= n)
+                        throw new RuntimeException(String.format("Bad filter: %s", text));
+                    if(text.charAt(i) == '\'') {
+                        if(i + 1 < n && text.charAt(i + 1) == '\'') {
+                            sb.append('\'');
+                            i += 2;
+                            continue;
+                        }
+                        i += 1;
+                        break;
+                    }
+                    sb.append(text.charAt(i++));
+                }
+                tokens.add(sb.toString());
+            }
+            else if(c == '=' || c == '<' || c == '>' || c == '!') {
+                int start = i++;
+                if(i < n && (text.charAt(i) == '=' || (c == '<' && text.charAt(i) == '>')))
+                    i += 1;
+                tokens.add(text.substring(start, i));
+            }
+            else {
+                int start = i;
+                while (i < n && !Character.isWhitespace(text.charAt(i)) && "=<>!'".indexOf(text.charAt(i)) == -1)
+                    i += 1;
+                tokens.add(text.substring(start, i));
+            }
+        }
+        return tokens;
+    }
+}
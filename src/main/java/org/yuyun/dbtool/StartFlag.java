@@ -5,4 +5,6 @@ public enum StartFlag {
     DataRow,
     DDL,
     EOF,
+    ColumnChunk,
+    Delta,
 }
@@ -0,0 +1,62 @@
+package org.yuyun.dbtool;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 导出时数据块内字符串列的字典：每列第一次出现的短字符串加入字典，之后再出现时只写入字典中的编号。
+ * 每列的字典达到上限后不再加入新值，已在字典中的值仍然写入编号。字典随数据块重置，
+ * 读取时按写入顺序重建同样的字典，重复的值返回同一个String实例。
+ */
+public class StringDictionary {
+    /**
+     * 超过该长度的字符串不加入字典
+     */
+    public static final int MAX_LENGTH = 256;
+
+    private final int limit;
+    private final List<Map<String, Integer>> maps = new ArrayList<>();
+
+    /**
+     * @param columns 列数
+     * @param limit 每列字典的最大值个数，为0时不使用字典
+     */
+    public StringDictionary(int columns, int limit) {
+        this.limit = limit;
+        for(int i=0; i<columns; i++)
+            this.maps.add(new HashMap<>());
+    }
+
+    /**
+     * 开始新的数据块
+     */
+    public void reset() {
+        for(Map<String, Integer> map : maps)
+            map.clear();
+    }
+
+    /**
+     * 写入字符串：已在字典中时写入varint(编号 &lt;&lt; 1 | 1)，否则写入varint(((长度 &lt;&lt; 1 | 是否加入字典) + 1) &lt;&lt; 1)和UTF-8编码
+     */
+    public void write(ChunkBuffer buf, int column, String value) {
+        if(limit <= 0 || value.length() > MAX_LENGTH) {
+            buf.writeVarString(value, false);
+            return;
+        }
+
+        Map<String, Integer> map = maps.get(column);
+
+        Integer id = map.get(value);
+        if(id != null) {
+            buf.writeVarLong((long) id << 1 | 1);
+            return;
+        }
+
+        boolean add = map.size() < limit;
+        if(add)
+            map.put(value, map.size());
+        buf.writeVarString(value, add);
+    }
+}
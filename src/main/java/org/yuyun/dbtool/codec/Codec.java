@@ -0,0 +1,99 @@
+package org.yuyun.dbtool.codec;
+
+import org.yuyun.dbtool.ChunkBuffer;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/**
+ * 数据块压缩算法。实例可能持有本地内存，不能在线程之间共享，用完后调用end释放。
+ */
+public abstract class Codec {
+    public static final byte NONE = 0;
+    public static final byte GZIP = 1;
+    public static final byte LZ4 = 2;
+    public static final byte ZSTD = 3;
+
+    /**
+     * @return 写入数据块头部的压缩算法编号
+     */
+    public abstract byte getId();
+
+    /**
+     * 压缩数据块
+     * @param src 原始数据块
+     * @param dst 压缩结果，原有内容会被清空
+     */
+    public abstract void compress(ChunkBuffer src, ChunkBuffer dst);
+
+    /**
+     * 解压数据块
+     * @param src 压缩数据
+     * @param off 压缩数据在src中的起始位置
+     * @param len 压缩数据长度
+     * @param dst 解压结果，长度不小于rawLen
+     * @param rawLen 原始数据长度
+     */
+    public abstract void decompress(byte[] src, int off, int len, byte[] dst, int rawLen) throws IOException;
+
+    public void end() {
+    }
+
+    /**
+     * 解析压缩算法参数：none、gzip[:级别]、lz4、zstd[:级别]
+     * @param spec 压缩算法参数
+     * @return 创建压缩算法实例的工厂，每个线程各自创建实例
+     */
+    public static Supplier<Codec> parse(String spec) {
+        String[] parts = spec.trim().toLowerCase().split(":", 2);
+        Integer level = null;
+        if(parts.length == 2) {
+            try {
+                level = Integer.parseInt(parts[1].trim());
+            } catch (NumberFormatException e) {
+                throw new RuntimeException(String.format("Bad codec level: %s", spec), e);
+            }
+        }
+
+        switch (parts[0]) {
+            case "none":
+                if(level == null)
+                    return NoneCodec::new;
+                break;
+            case "gzip":
+                int gzipLevel = level == null ? -1 : level;
+                if(gzipLevel >= -1 && gzipLevel <= 9)
+                    return () -> new GzipCodec(gzipLevel);
+                break;
+            case "lz4":
+                if(level == null)
+                    return Lz4Codec::new;
+                break;
+            case "zstd":
+                int zstdLevel = level == null ? 3 : level;
+                if(zstdLevel >= 1 && zstdLevel <= 22)
+                    return () -> new ZstdCodec(zstdLevel);
+                break;
+        }
+        throw new RuntimeException(String.format("Unsupported codec: %s", spec));
+    }
+
+    /**
+     * 按编号创建解压用的实例
+     * @param id 数据块头部的压缩算法编号
+     * @return 压缩算法实例
+     */
+    public static Codec create(byte id) {
+        switch (id) {
+            case NONE:
+                return new NoneCodec();
+            case GZIP:
+                return new GzipCodec(-1);
+            case LZ4:
+                return new Lz4Codec();
+            case ZSTD:
+                return new ZstdCodec(3);
+        }
+        throw new RuntimeException(String.format("Unsupported codec id: %d", id));
+    }
+}
@@ -0,0 +1,117 @@
+package org.yuyun.dbtool.codec;
+
+import org.yuyun.dbtool.ChunkBuffer;
+
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * GZIP格式，与GZIPOutputStream的输出兼容。Deflater、Inflater和CRC32在多次压缩之间复用。
+ */
+public class GzipCodec extends Codec {
+    private static final byte[] HEADER = {
+            (byte) 0x1f, (byte) 0x8b,   //GZIP标识
+            Deflater.DEFLATED,          //压缩方法
+            0,                          //标志位
+            0, 0, 0, 0,                 //修改时间
+            0,                          //附加标志
+            (byte) 0xff                 //操作系统：未知
+    };
+    private static final int TRAILER_SIZE = 8;
+
+    private final int level;
+    private Deflater deflater = null;
+    private Inflater inflater = null;
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * @param level 压缩级别0~9，-1为默认级别
+     */
+    public GzipCodec(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public byte getId() {
+        return GZIP;
+    }
+
+    @Override
+    public void compress(ChunkBuffer src, ChunkBuffer dst) {
+        if(deflater == null)
+            deflater = new Deflater(level, true);
+
+        dst.reset();
+        dst.write(HEADER, 0, HEADER.length);
+
+        deflater.reset();
+        deflater.setInput(src.array(), 0, src.size());
+        deflater.finish();
+        dst.ensureCapacity(src.size() / 2 + 64);
+        while (!deflater.finished()) {
+            if(dst.size() == dst.array().length)
+                dst.ensureCapacity(dst.size());
+            int n = deflater.deflate(dst.array(), dst.size(), dst.array().length - dst.size());
+            dst.setSize(dst.size() + n);
+        }
+
+        crc.reset();
+        crc.update(src.array(), 0, src.size());
+        writeIntLE(dst, (int) crc.getValue());
+        writeIntLE(dst, src.size());
+    }
+
+    /**
+     * 只支持compress写出的不带可选字段的GZIP头
+     */
+    @Override
+    public void decompress(byte[] src, int off, int len, byte[] dst, int rawLen) throws IOException {
+        if(len < HEADER.length + TRAILER_SIZE || src[off] != HEADER[0] || src[off + 1] != HEADER[1] || src[off + 3] != 0)
+            throw new IOException("Invalid gzip chunk");
+
+        if(inflater == null)
+            inflater = new Inflater(true);
+        inflater.reset();
+        inflater.setInput(src, off + HEADER.length, len - HEADER.length - TRAILER_SIZE);
+        try {
+            int n = 0;
+            while (n < rawLen && !inflater.finished()) {
+                int m = inflater.inflate(dst, n, rawLen - n);
+                if(m == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                n += m;
+            }
+            if(n != rawLen)
+                throw new IOException("Corrupt gzip chunk: length mismatch");
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt gzip chunk", e);
+        }
+
+        crc.reset();
+        crc.update(dst, 0, rawLen);
+        if(readIntLE(src, off + len - TRAILER_SIZE) != (int) crc.getValue())
+            throw new IOException("Corrupt gzip chunk: CRC mismatch");
+    }
+
+    @Override
+    public void end() {
+        if(deflater != null)
+            deflater.end();
+        if(inflater != null)
+            inflater.end();
+    }
+
+    private static void writeIntLE(ChunkBuffer dst, int value) {
+        dst.writeByte((byte) value);
+        dst.writeByte((byte) (value >> 8));
+        dst.writeByte((byte) (value >> 16));
+        dst.writeByte((byte) (value >> 24));
+    }
+
+    private static int readIntLE(byte[] src, int off) {
+        return (src[off] & 0xFF) | (src[off + 1] & 0xFF) << 8 | (src[off + 2] & 0xFF) << 16 | (src[off + 3] & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,42 @@
+package org.yuyun.dbtool.codec;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import org.yuyun.dbtool.ChunkBuffer;
+
+import java.io.IOException;
+
+/**
+ * LZ4块格式，压缩率低于GZIP，但压缩和解压速度快得多，适合同机房传输
+ */
+public class Lz4Codec extends Codec {
+    private static final LZ4Factory factory = LZ4Factory.fastestInstance();
+
+    private final LZ4Compressor compressor = factory.fastCompressor();
+    private final LZ4SafeDecompressor decompressor = factory.safeDecompressor();
+
+    @Override
+    public byte getId() {
+        return LZ4;
+    }
+
+    @Override
+    public void compress(ChunkBuffer src, ChunkBuffer dst) {
+        dst.reset();
+        dst.ensureCapacity(compressor.maxCompressedLength(src.size()));
+        int n = compressor.compress(src.array(), 0, src.size(), dst.array(), 0, dst.array().length);
+        dst.setSize(n);
+    }
+
+    @Override
+    public void decompress(byte[] src, int off, int len, byte[] dst, int rawLen) throws IOException {
+        try {
+            if(decompressor.decompress(src, off, len, dst, 0, rawLen) != rawLen)
+                throw new IOException("Corrupt lz4 chunk: length mismatch");
+        } catch (LZ4Exception e) {
+            throw new IOException("Corrupt lz4 chunk", e);
+        }
+    }
+}
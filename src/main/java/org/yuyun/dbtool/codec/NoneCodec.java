@@ -0,0 +1,28 @@
+package org.yuyun.dbtool.codec;
+
+import org.yuyun.dbtool.ChunkBuffer;
+
+import java.io.IOException;
+
+/**
+ * 不压缩，数据块按原样存储
+ */
+public class NoneCodec extends Codec {
+    @Override
+    public byte getId() {
+        return NONE;
+    }
+
+    @Override
+    public void compress(ChunkBuffer src, ChunkBuffer dst) {
+        dst.reset();
+        dst.write(src.array(), 0, src.size());
+    }
+
+    @Override
+    public void decompress(byte[] src, int off, int len, byte[] dst, int rawLen) throws IOException {
+        if(len != rawLen)
+            throw new IOException("Corrupt chunk: length mismatch");
+        System.arraycopy(src, off, dst, 0, len);
+    }
+}
@@ -0,0 +1,62 @@
+package org.yuyun.dbtool.codec;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdDecompressCtx;
+import com.github.luben.zstd.ZstdException;
+import org.yuyun.dbtool.ChunkBuffer;
+
+import java.io.IOException;
+
+/**
+ * Zstandard格式，默认级别下压缩率和速度都优于GZIP，高级别适合归档
+ */
+public class ZstdCodec extends Codec {
+    private final int level;
+    private ZstdCompressCtx compressCtx = null;
+    private ZstdDecompressCtx decompressCtx = null;
+
+    /**
+     * @param level 压缩级别1~22
+     */
+    public ZstdCodec(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public byte getId() {
+        return ZSTD;
+    }
+
+    @Override
+    public void compress(ChunkBuffer src, ChunkBuffer dst) {
+        if(compressCtx == null)
+            compressCtx = new ZstdCompressCtx().setLevel(level);
+
+        dst.reset();
+        dst.ensureCapacity((int) Zstd.compressBound(src.size()));
+        int n = compressCtx.compressByteArray(dst.array(), 0, dst.array().length, src.array(), 0, src.size());
+        dst.setSize(n);
+    }
+
+    @Override
+    public void decompress(byte[] src, int off, int len, byte[] dst, int rawLen) throws IOException {
+        if(decompressCtx == null)
+            decompressCtx = new ZstdDecompressCtx();
+
+        try {
+            if(decompressCtx.decompressByteArray(dst, 0, rawLen, src, off, len) != rawLen)
+                throw new IOException("Corrupt zstd chunk: length mismatch");
+        } catch (ZstdException e) {
+            throw new IOException("Corrupt zstd chunk", e);
+        }
+    }
+
+    @Override
+    public void end() {
+        if(compressCtx != null)
+            compressCtx.close();
+        if(decompressCtx != null)
+            decompressCtx.close();
+    }
+}
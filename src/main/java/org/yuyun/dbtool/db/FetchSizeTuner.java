@@ -0,0 +1,115 @@
+package org.yuyun.dbtool.db;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * 根据实测的行宽调整结果集每批获取的行数，使每批数据量接近设定的内存预算
+ */
+public class FetchSizeTuner {
+    private static final int DEFAULT_FETCH_SIZE = 100;
+    private static final int MIN_FETCH_SIZE = 10;
+    private static final int MAX_FETCH_SIZE = 50000;
+    private static final int MIN_SAMPLE_ROWS = 1000;
+
+    private final RelationalDB db;
+    private final long budget;
+    private ResultSet rs = null;
+    private int fetchSize;
+    private int sampleRows = 0;
+    private long sampleBytes = 0;
+
+    /**
+     * @param db 数据库方言
+     * @param budget 每批获取数据的目标字节数
+     * @param fixedFetchSize 大于0时固定每批获取的行数，不再调整
+     */
+    public FetchSizeTuner(RelationalDB db, long budget, int fixedFetchSize) {
+        this.db = db;
+        this.budget = budget;
+        if(fixedFetchSize > 0) {
+            this.fetchSize = fixedFetchSize;
+            this.sampleRows = -1;
+        }
+        else
+            this.fetchSize = DEFAULT_FETCH_SIZE;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * 开始跟踪结果集，先按元数据估算的行宽设置每批获取的行数，驱动不支持调整时不再统计
+     */
+    public void attach(ResultSet rs) throws SQLException {
+        this.rs = rs;
+        if(sampleRows < 0)
+            return;
+
+        int size = clamp(budget / estimateRowWidth(rs.getMetaData()));
+        if(db.setFetchSize(rs, size))
+            this.fetchSize = size;
+        else
+            this.sampleRows = -1;
+    }
+
+    /**
+     * 统计一行数据，每读取一个采样窗口的行数后按平均行宽重新计算每批获取的行数
+     * @param rowBytes 该行编码后的字节数
+     */
+    public void onRow(int rowBytes) throws SQLException {
+        if(sampleRows < 0)
+            return;
+
+        sampleRows += 1;
+        sampleBytes += rowBytes;
+        if(sampleRows < Math.max(fetchSize, MIN_SAMPLE_ROWS))
+            return;
+
+        int size = clamp(budget / Math.max(1, sampleBytes / sampleRows));
+        //变化不超过25%时不调整
+        if(Math.abs(size - fetchSize) * 4 > fetchSize) {
+            fetchSize = size;
+            db.setFetchSize(rs, fetchSize);
+        }
+        sampleRows = 0;
+        sampleBytes = 0;
+    }
+
+    private static int clamp(long size) {
+        return (int) Math.max(MIN_FETCH_SIZE, Math.min(MAX_FETCH_SIZE, size));
+    }
+
+    /**
+     * 按列类型和精度估算行宽，变长列按最大长度计算，宁大勿小
+     */
+    private static long estimateRowWidth(ResultSetMetaData md) throws SQLException {
+        long width = 0;
+        for(int i=0; i<md.getColumnCount(); i++) {
+            int prec = md.getPrecision(i + 1);
+            switch (md.getColumnType(i + 1)) {
+                case Types.CHAR:
+                case Types.VARCHAR:
+                case Types.NCHAR:
+                case Types.NVARCHAR:
+                case Types.VARBINARY:
+                    width += prec > 0 ? Math.min(prec, 32 * 1024) : 256;
+                    break;
+                case Types.LONGVARCHAR:
+                case Types.LONGVARBINARY:
+                case Types.CLOB:
+                case Types.NCLOB:
+                case Types.BLOB:
+                    width += 64 * 1024;
+                    break;
+                default:
+                    width += 16;
+                    break;
+            }
+        }
+        return Math.max(width, 1);
+    }
+}
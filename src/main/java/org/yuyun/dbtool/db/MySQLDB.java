@@ -1,11 +1,52 @@
 package org.yuyun.dbtool.db;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
 
 public class MySQLDB implements RelationalDB{
     @Override
     public String getTableDDL(Connection conn, String tableName) throws SQLException {
         return null;
     }
+
+    /**
+     * Connector/J默认把整个结果集读入内存，fetchSize设为Integer.MIN_VALUE时逐行流式读取，
+     * 此时每次只在内存中保留一行，无需再调整
+     */
+    @Override
+    public Statement createStreamingStatement(Connection conn, int fetchSize) throws SQLException {
+        Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        stmt.setFetchSize(Integer.MIN_VALUE);
+        return stmt;
+    }
+
+    @Override
+    public boolean setFetchSize(ResultSet rs, int fetchSize) {
+        return false;
+    }
+
+    /**
+     * MySQL的时间戳最多精确到微秒
+     */
+    @Override
+    public String formatTimestamp(Timestamp value) {
+        return String.format("TIMESTAMP '%s'", truncateToMicros(value));
+    }
+
+    @Override
+    public long getTableSize(Connection conn, String tableName) throws SQLException {
+        String[] parts = tableName.split("\\.");
+        if(parts.length == 2)
+            return RelationalDB.queryLong(conn, "SELECT data_length FROM information_schema.tables WHERE table_schema = ? AND table_name = ?", parts[0], parts[1]);
+        return RelationalDB.queryLong(conn, "SELECT data_length FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name = ?", parts[0]);
+    }
+
+    static String truncateToMicros(Timestamp value) {
+        String s = value.toString();
+        int dot = s.indexOf('.');
+        return dot >= 0 && s.length() > dot + 7 ? s.substring(0, dot + 7) : s;
+    }
 }
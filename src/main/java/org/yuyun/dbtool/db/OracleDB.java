@@ -4,6 +4,7 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -178,4 +179,36 @@ public class OracleDB implements RelationalDB {
 
         return sb.toString();
     }
+
+    /**
+     * Oracle默认每批预取10行，按行宽设置预取行数以减少网络往返
+     */
+    @Override
+    public Statement createStreamingStatement(Connection conn, int fetchSize) throws SQLException {
+        Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        stmt.setFetchSize(fetchSize);
+        return stmt;
+    }
+
+    @Override
+    public boolean setFetchSize(ResultSet rs, int fetchSize) throws SQLException {
+        rs.setFetchSize(fetchSize);
+        return true;
+    }
+
+    @Override
+    public String formatTimestamp(Timestamp value) {
+        return String.format("TIMESTAMP '%s'", value);
+    }
+
+    /**
+     * 按最近一次收集的统计信息估算字节数
+     */
+    @Override
+    public long getTableSize(Connection conn, String tableName) throws SQLException {
+        String[] parts = tableName.toUpperCase().split("\\.");
+        if(parts.length == 2)
+            return RelationalDB.queryLong(conn, "SELECT num_rows * avg_row_len FROM all_tables WHERE owner = ? AND table_name = ?", parts[0], parts[1]);
+        return RelationalDB.queryLong(conn, "SELECT num_rows * avg_row_len FROM user_tables WHERE table_name = ?", parts[0]);
+    }
 }
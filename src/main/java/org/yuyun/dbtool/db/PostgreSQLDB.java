@@ -1,7 +1,10 @@
 package org.yuyun.dbtool.db;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
 
 public class PostgreSQLDB implements RelationalDB{
     @Override
@@ -9,4 +12,34 @@ public class PostgreSQLDB implements RelationalDB{
 
         return null;
     }
+
+    /**
+     * PgJDBC只有在关闭自动提交并设置fetchSize时才使用游标分批获取，否则一次读取所有行
+     */
+    @Override
+    public Statement createStreamingStatement(Connection conn, int fetchSize) throws SQLException {
+        conn.setAutoCommit(false);
+        Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        stmt.setFetchSize(fetchSize);
+        return stmt;
+    }
+
+    @Override
+    public boolean setFetchSize(ResultSet rs, int fetchSize) throws SQLException {
+        rs.setFetchSize(fetchSize);
+        return true;
+    }
+
+    /**
+     * PostgreSQL的时间戳最多精确到微秒
+     */
+    @Override
+    public String formatTimestamp(Timestamp value) {
+        return String.format("TIMESTAMP '%s'", MySQLDB.truncateToMicros(value));
+    }
+
+    @Override
+    public long getTableSize(Connection conn, String tableName) throws SQLException {
+        return RelationalDB.queryLong(conn, "SELECT pg_total_relation_size(to_regclass(?))", tableName);
+    }
 }
@@ -1,8 +1,94 @@
 package org.yuyun.dbtool.db;
 
+import java.io.InputStream;
+import java.io.Reader;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
 
 public interface RelationalDB {
     String getTableDDL(Connection conn, String tableName) throws SQLException;
+
+    /**
+     * 创建导出大结果集用的查询语句，使驱动按批次从服务器获取数据，而不是把整个结果集读入内存
+     * @param conn 数据库连接
+     * @param fetchSize 初始每批获取的行数
+     * @return 查询语句
+     */
+    Statement createStreamingStatement(Connection conn, int fetchSize) throws SQLException;
+
+    /**
+     * 关闭createStreamingStatement创建的查询语句。创建时关闭了自动提交的，结束只读事务并恢复自动提交，
+     * 避免连接停留在事务中
+     * @param stmt 查询语句
+     * @param autoCommit 创建查询语句之前连接的自动提交设置
+     */
+    default void closeStreamingStatement(Statement stmt, boolean autoCommit) throws SQLException {
+        Connection conn = stmt.getConnection();
+        stmt.close();
+        if(autoCommit && !conn.getAutoCommit()) {
+            //只有查询，回滚即可结束事务，读取失败时也可以使用
+            conn.rollback();
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * 调整结果集后续每批获取的行数
+     * @param rs 结果集
+     * @param fetchSize 每批获取的行数
+     * @return 驱动不支持在读取过程中调整时返回false
+     */
+    boolean setFetchSize(ResultSet rs, int fetchSize) throws SQLException;
+
+    /**
+     * 生成可以直接拼接在SQL语句中的时间戳常量
+     * @param value 时间戳
+     * @return SQL常量
+     */
+    String formatTimestamp(Timestamp value);
+
+    /**
+     * 根据数据字典中的统计信息估算表的大小，用于多表处理时先处理大表，单位由数据库决定
+     * @param conn 数据库连接
+     * @param tableName 表名，可以带有模式名
+     * @return 表的大小，没有统计信息时返回-1
+     */
+    long getTableSize(Connection conn, String tableName) throws SQLException;
+
+    /**
+     * 以流的方式绑定二进制大对象参数，执行时驱动才读取流
+     * @param length 字节长度
+     */
+    default void setBinaryStream(PreparedStatement ps, int index, InputStream is, long length) throws SQLException {
+        ps.setBinaryStream(index, is, length);
+    }
+
+    /**
+     * 以流的方式绑定文本大对象参数，执行时驱动才读取流
+     * @param length UTF-8编码后的字节长度，不小于字符数
+     */
+    default void setCharacterStream(PreparedStatement ps, int index, Reader reader, long length) throws SQLException {
+        ps.setCharacterStream(index, reader);
+    }
+
+    /**
+     * 执行返回单个数值的查询
+     * @return 查询结果，没有结果或结果为null时返回-1
+     */
+    static long queryLong(Connection conn, String sql, String... params) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for(int i=0; i<params.length; i++)
+                ps.setString(i + 1, params[i]);
+            try (ResultSet rs = ps.executeQuery()) {
+                if(!rs.next())
+                    return -1;
+                long value = rs.getLong(1);
+                return rs.wasNull() ? -1 : value;
+            }
+        }
+    }
 }
@@ -1,11 +1,61 @@
 package org.yuyun.dbtool.db;
 
+import java.io.InputStream;
+import java.io.Reader;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
 
 public class SQLiteDB implements RelationalDB {
     @Override
     public String getTableDDL(Connection conn, String tableName) throws SQLException {
         return null;
     }
+
+    @Override
+    public Statement createStreamingStatement(Connection conn, int fetchSize) throws SQLException {
+        return conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    }
+
+    @Override
+    public boolean setFetchSize(ResultSet rs, int fetchSize) {
+        return false;
+    }
+
+    /**
+     * SQLite JDBC默认将时间戳存储为毫秒数
+     */
+    @Override
+    public String formatTimestamp(Timestamp value) {
+        return String.valueOf(value.getTime());
+    }
+
+    /**
+     * 没有数据字典，执行过ANALYZE时按sqlite_stat1中的行数估算
+     */
+    @Override
+    public long getTableSize(Connection conn, String tableName) throws SQLException {
+        try {
+            return RelationalDB.queryLong(conn, "SELECT max(CAST(stat AS INTEGER)) FROM sqlite_stat1 WHERE tbl = ?", tableName);
+        } catch (SQLException e) {
+            //没有执行过ANALYZE时sqlite_stat1不存在
+            return -1;
+        }
+    }
+
+    /**
+     * SQLite JDBC只支持int长度的版本，执行前将整个值读入内存
+     */
+    @Override
+    public void setBinaryStream(PreparedStatement ps, int index, InputStream is, long length) throws SQLException {
+        ps.setBinaryStream(index, is, (int) length);
+    }
+
+    @Override
+    public void setCharacterStream(PreparedStatement ps, int index, Reader reader, long length) throws SQLException {
+        ps.setCharacterStream(index, reader, (int) length);
+    }
 }
@@ -0,0 +1,277 @@
+package org.yuyun.dbtool.processor;
+
+import org.yuyun.dbtool.FieldType;
+import org.yuyun.dbtool.LobFile;
+import org.yuyun.dbtool.LobRef;
+import org.yuyun.dbtool.LogLevel;
+import org.yuyun.dbtool.db.RelationalDB;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 不经过数据文件，直接将源数据库的查询结果写入目标数据库。
+ * 读取线程从源结果集读取行并按批放入有界队列，调用线程取出后绑定到目标表的批量插入语句，读取和写入同时进行。
+ * 列类型映射与export相同，目标表的插入/更新语句和绑定与import相同。
+ * 与export相同，日期列只保留日历日期，BLOB和CLOB按流读取，超过阈值时写入临时的旁路文件，写入目标表时再按流读取。
+ */
+public class CopyProcessor extends Processor {
+    private static final List<Object[]> END = new ArrayList<>();
+
+    private String argTableName;
+    private String argSQL;
+    private String argFields;
+    private String argWhere;
+    private int argLimit;
+    private int argFeedback;
+    private int argFetchSize;
+    private int argBatch;
+    private int argQueue;
+    private int argLobThreshold;
+    private Map<String, String> connectionArgs;
+    private Map<String, String> targetArgs;
+
+    private volatile Throwable error = null;
+
+    @Override
+    public String getActionName() {
+        return "copy";
+    }
+
+    @Override
+    protected boolean isConnectionUsed() {
+        return false;
+    }
+
+    /**
+     * copy
+     *     --src-type、--src-jdbc、--src-host、--src-db、--src-sid、--src-user、--src-pass     源数据库连接参数
+     *     --dest-type、--dest-jdbc、--dest-host、--dest-db、--dest-sid、--dest-user、--dest-pass 目标数据库连接参数
+     *     --table S    <可选>源表名
+     *     --sql S      <可选>完整的SQL语句
+     *     --fields S   <可选>要复制的源字段列表，如果未设置，则复制所有列
+     *     --where S    <可选>复制数据的条件，如果未设置，则复制所有行
+     *     --limit N    <可选>限制复制的行数，如果未设置，则复制所有行
+     *     --feedback N <可选>每多少行显示进度提示，默认为10000
+     *     --dest-table S <可选>目标表名，默认与源表名相同
+     *     --mapping S  <可选>字段映射，格式同import的--fields
+     *     --upset S    <可选>根据唯一约束进行更新，需设置约束字段
+     *     --batch N    <可选>批量提交的行数，默认为10000
+     *     --fetch-size N <可选>每批从源数据库获取的行数，默认为1000
+     *     --queue N    <可选>读取线程最多领先写入的批数，默认为4
+     *     --lob-threshold N <可选>BLOB和CLOB超过N KB（CLOB按字符数）时按流写入临时的旁路文件，默认为1024
+     */
+    @Override
+    protected void parseArguments(Map<String, String> args) {
+        this.argTableName = checkOptionalArgumentString(args, "table", "");
+        this.argSQL = checkOptionalArgumentString(args, "sql", "");
+        this.argFields = checkOptionalArgumentString(args, "fields", "");
+        this.argWhere = checkOptionalArgumentString(args, "where", "");
+        this.argLimit = checkOptionalArgumentInt(args, "limit", Integer.MAX_VALUE);
+        this.argFeedback = checkOptionalArgumentInt(args, "feedback", 10000);
+        this.argFetchSize = checkOptionalArgumentInt(args, "fetch-size", 1000);
+        this.argBatch = checkOptionalArgumentInt(args, "batch", 10000);
+        this.argQueue = checkOptionalArgumentInt(args, "queue", 4);
+        this.argLobThreshold = checkOptionalArgumentInt(args, "lob-threshold", 1024);
+
+        if(argTableName.isEmpty() && argSQL.isEmpty())
+            throw new RuntimeException("Parameter \"table\" or \"sql\" must be specified");
+        if(argBatch < 1)
+            throw new RuntimeException(String.format("The parameter batch is not a valid integer: %d", argBatch));
+        if(argQueue < 1)
+            throw new RuntimeException(String.format("The parameter queue is not a valid integer: %d", argQueue));
+        if(argLobThreshold < 1 || argLobThreshold > 1024 * 1024)
+            throw new RuntimeException(String.format("The parameter lob-threshold is not a valid integer: %d", argLobThreshold));
+
+        this.connectionArgs = args;
+
+        //传递给import的目标表参数
+        this.targetArgs = new HashMap<>();
+        targetArgs.put("table", checkOptionalArgumentString(args, "dest-table", argTableName));
+        if(targetArgs.get("table").isEmpty())
+            throw new RuntimeException("Parameter \"dest-table\" must be specified when copying from sql");
+        targetArgs.put("batch", String.valueOf(argBatch));
+        if(args.containsKey("mapping"))
+            targetArgs.put("fields", args.get("mapping"));
+        if(args.containsKey("upset"))
+            targetArgs.put("upset", args.get("upset"));
+    }
+
+    @Override
+    protected void process() throws Exception {
+        //连接源数据库和目标数据库
+        parseConnectionArguments(connectionArgs, "src-");
+        ImportProcessor target = new ImportProcessor();
+        target.parseConnectionArguments(connectionArgs, "dest-");
+        //超过阈值的大对象暂存在临时文件中，复制结束后删除
+        File spool = File.createTempFile("dbtool-copy-", ".tmp");
+        spool.delete();
+        LobFile lobs = new LobFile(spool.getPath(), true, argLobThreshold * 1024);
+        try {
+            target.parseTargetArguments(targetArgs);
+            copy(target, lobs);
+        } finally {
+            target.getConnection().close();
+            lobs.close();
+            lobs.delete();
+        }
+    }
+
+    private void copy(ImportProcessor target, LobFile lobs) throws Exception {
+        String sql = argSQL;
+        if(sql.isEmpty()) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("select ");
+            sb.append(argFields.isEmpty() ? "*" : argFields);
+            sb.append(" from ");
+            sb.append(argTableName);
+
+            if (!argWhere.isEmpty()) {
+                if(argWhere.length() < 5 || !argWhere.substring(0, 5).equalsIgnoreCase("where"))
+                    sb.append(" where");
+                sb.append(" ").append(argWhere);
+            }
+            sql = sb.toString();
+        }
+        printMsg(LogLevel.INFO, String.format("SQL: %s", sql));
+
+        RelationalDB db = getRelationalDB();
+        boolean autoCommit = getConnection().getAutoCommit();
+        Statement stmt = db.createStreamingStatement(getConnection(), argFetchSize);
+        try {
+            printMsg(LogLevel.INFO, "Execute query ...");
+            ResultSet rs = stmt.executeQuery(sql);
+            ResultSetMetaData md = rs.getMetaData();
+            FieldType[] fieldTypes = new FieldType[md.getColumnCount()];
+            String[] fieldTypeNames = new String[fieldTypes.length];
+            String[] names = new String[fieldTypes.length];
+            ExportProcessor.mapFieldTypes(md, fieldTypes, fieldTypeNames);
+            boolean[] clobFields = ExportProcessor.getClobFields(md);
+            for(int i=0; i<names.length; i++)
+                names[i] = md.getColumnLabel(i + 1);
+
+            //生成目标表的插入语句
+            if(!target.onSummary(null, fieldTypes.length, names, fieldTypes, fieldTypeNames, -1, 0))
+                throw new RuntimeException(String.format("Can't prepare target table %s", targetArgs.get("table")));
+
+            BlockingQueue<List<Object[]>> queue = new ArrayBlockingQueue<>(argQueue);
+            Thread reader = new Thread(() -> {
+                try {
+                    fetchRows(rs, fieldTypes, clobFields, lobs, queue);
+                } catch (InterruptedException e) {
+                    //写入失败，停止读取
+                    return;
+                } catch (Throwable e) {
+                    error = e;
+                }
+                try {
+                    queue.put(END);
+                } catch (InterruptedException ignored) {
+                }
+            }, "copy-reader");
+            reader.setDaemon(true);
+            reader.start();
+
+            int rows = 0;
+            try {
+                List<Object[]> batch;
+                while ((batch = queue.take()) != END) {
+                    //行数由读取线程限制，忽略onRow的返回值
+                    for(Object[] row : batch) {
+                        rows += 1;
+                        target.onRow(rows, row);
+                        if((rows % argFeedback) == 0)
+                            printMsg(LogLevel.INFO, String.format("%d rows ...", rows));
+                    }
+                }
+                if(error != null)
+                    throw new RuntimeException(String.format("Fetch failed after row %d: %s", rows, error.getMessage()), error);
+
+                target.onRowEnd(rows);
+            } finally {
+                reader.interrupt();
+                reader.join();
+            }
+
+            this.setResultInfo("rows", rows);
+        } finally {
+            db.closeStreamingStatement(stmt, autoCommit);
+        }
+    }
+
+    /**
+     * 在读取线程中按批读取结果集，值的类型与读取数据文件时相同
+     * @param clobFields 需要按流读取的文本列
+     * @param lobs 超过阈值的大对象写入的旁路文件
+     */
+    private void fetchRows(ResultSet rs, FieldType[] fieldTypes, boolean[] clobFields, LobFile lobs,
+                           BlockingQueue<List<Object[]>> queue) throws SQLException, IOException, InterruptedException {
+        int rows = 0;
+        List<Object[]> batch = new ArrayList<>(argBatch);
+        while (rows < argLimit && rs.next()) {
+            Object[] row = new Object[fieldTypes.length];
+            for(int i=0; i<fieldTypes.length; i++) {
+                switch (fieldTypes[i]) {
+                    case Integer:
+                        row[i] = rs.getInt(i + 1);
+                        break;
+                    case Long:
+                        row[i] = rs.getLong(i + 1);
+                        break;
+                    case Double:
+                        row[i] = rs.getDouble(i + 1);
+                        break;
+                    case Decimal:
+                        row[i] = rs.getBigDecimal(i + 1);
+                        break;
+                    case String:
+                        row[i] = clobFields[i] ? toLobRef(ExportProcessor.readText(rs, i + 1, lobs), lobs) : rs.getString(i + 1);
+                        break;
+                    case Date:
+                        LocalDate date = ExportProcessor.readDate(rs, i + 1);
+                        row[i] = date == null ? null : java.sql.Date.valueOf(date);
+                        continue;
+                    case DateTime:
+                        row[i] = rs.getTimestamp(i + 1);
+                        break;
+                    case DateTimeTZ:
+                        row[i] = rs.getObject(i + 1, OffsetDateTime.class);
+                        break;
+                    case Binary:
+                        row[i] = toLobRef(ExportProcessor.readBinary(rs, i + 1, lobs), lobs);
+                        continue;
+                    case Null:
+                        continue;
+                }
+                if(rs.wasNull())
+                    row[i] = null;
+            }
+
+            batch.add(row);
+            rows += 1;
+            if(batch.size() >= argBatch) {
+                queue.put(batch);
+                batch = new ArrayList<>(argBatch);
+            }
+        }
+        if(!batch.isEmpty())
+            queue.put(batch);
+    }
+
+    /**
+     * 写入旁路文件的大对象转换为引用，其他值不变
+     */
+    private static Object toLobRef(Object value, LobFile lobs) {
+        if(value instanceof long[]) {
+            long[] ref = (long[]) value;
+            return new LobRef(lobs, ref[0], ref[1]);
+        }
+        return value;
+    }
+}
@@ -1,19 +1,88 @@
 package org.yuyun.dbtool.processor;
 
+import com.google.gson.Gson;
+import org.yuyun.dbtool.ChunkBuffer;
+import org.yuyun.dbtool.ChunkSizer;
+import org.yuyun.dbtool.ChunkStats;
+import org.yuyun.dbtool.ChunkWriter;
+import org.yuyun.dbtool.ColumnChunk;
 import org.yuyun.dbtool.DataFile;
+import org.yuyun.dbtool.DeltaInfo;
+import org.yuyun.dbtool.DeltaOfDelta;
 import org.yuyun.dbtool.FieldType;
+import org.yuyun.dbtool.LobFile;
 import org.yuyun.dbtool.LogLevel;
+import org.yuyun.dbtool.Metrics;
 import org.yuyun.dbtool.StartFlag;
+import org.yuyun.dbtool.StringDictionary;
+import org.yuyun.dbtool.codec.Codec;
+import org.yuyun.dbtool.db.FetchSizeTuner;
+import org.yuyun.dbtool.db.RelationalDB;
 
 import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.sql.*;
 import java.text.DecimalFormat;
-import java.util.Map;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class ExportProcessor extends Processor{
+    static class Partition {
+        int     index;
+        String  condition;
+        int     rows;
+        long    bytes;
+        long    cost;
+        int     chunkRows;  //最后选定的数据块行数
+        long    chunkBytes; //最后选定的数据块压缩前的字节数上限
+    }
+
+    /**
+     * 数据块压缩后的目标大小
+     */
+    private static final long CHUNK_TARGET_BYTES = 256 * 1024;
+
+    /**
+     * 增量导出的状态文件内容
+     */
+    static class WatermarkState {
+        String  table;
+        String  column;
+        String  type;   //number或timestamp
+        String  value;  //已导出的最高水位
+        String  file;   //最近一次导出的数据文件，写入标准输出时为"-"
+        String  time;
+    }
+
+    /**
+     * 可续传导出的检查点文件内容，offset之前的数据块都已经刷新到磁盘
+     */
+    static class Checkpoint {
+        String  table;
+        String  key;
+        String  type;   //number、timestamp或string
+        String  value;  //已导出的最后一行的主键值
+        long    offset; //最后一个完整数据块的结束位置
+        long    lobOffset;  //大对象旁路文件的长度
+        int     rows;
+        String  time;
+    }
+
     private String argTableName;
     private String argSQL;
     private String argFields;
@@ -21,6 +90,29 @@ public class ExportProcessor extends Processor{
     private int argLimit;
     private int argFeedback;
     private String argOutputFile;
+    private int argThreads;
+    private String argKey;
+    private String argRanges;
+    private int argPartitions;
+    private int argCompressThreads;
+    private int argFetchSize;
+    private int argFetchMemory;
+    private Supplier<Codec> argCodec;
+    private boolean argColumnar;
+    private String argWatermark;
+    private String argState;
+    private boolean argResume;
+    private int argLobThreshold;
+    private int argDictSize;
+    private int argChunkRows;
+    private int argChunkBytes;
+    private LobFile lobs;
+    private boolean[] clobFields;       //按流读取的文本大对象列
+    private int[] scales;               //定点数列的小数位数
+    private int resumeKeyIndex = 0;     //结果集中主键列的位置，不记录检查点时为0
+    private String resumeKeyType;
+    private long lastCheckpointTime = 0;
+    private final Metrics metrics = new Metrics("execute", "fetch", "encode", "compress", "write");
 
     @Override
     public String getActionName() {
@@ -40,7 +132,26 @@ public class ExportProcessor extends Processor{
      *     --where S    <可选>导出数据的条件和排序，如果未设置，则导出所有行
      *     --limit N    <可选>限制导出的行数，如果未设置，则导出所有行
      *     --feedback N <可选>每多少行显示进度提示，默认为10000行
-     *     --output S   目标数据文件路径
+     *     --output S   目标数据文件路径，为"-"时写入标准输出（日志写入标准错误，大对象不使用旁路文件）
+     *     --threads N  <可选>并行导出的线程数，每个线程使用独立的数据库连接，where不能含有order by，默认为1
+     *     --key S      <可选>并行导出时用于划分区间的数值型主键字段
+     *     --ranges S   <可选>并行导出的区间划分文件，即sample命令的输出文件
+     *     --partitions N <可选>未设置ranges时，按主键最小值/最大值均分的区间数，默认为线程数
+     *     --compress-threads N <可选>压缩线程数，为0时在读取线程中压缩，默认为CPU核数（最多4个）
+     *     --fetch-size N <可选>每批从数据库获取的行数，如果未设置，则按行宽和fetch-memory自动调整
+     *     --fetch-memory N <可选>自动调整时每批获取数据的目标大小（MB），默认为16
+     *     --codec S    <可选>数据块压缩算法：none、gzip[:级别]、lz4、zstd[:级别]，默认为gzip
+     *     --layout S   <可选>数据块布局：row按行存储，column按列存储（各列分别压缩，导入时只解码用到的列），默认为row
+     *     --watermark S <可选>增量导出的水位列（更新时间或单调递增的主键），只导出比上次导出的水位更新的行
+     *     --state S    <可选>增量导出的状态文件，记录上次导出的水位和数据文件，设置watermark时必须设置
+     *     --resume Y   <可选>可续传导出：按key排序导出，每个数据块写入后刷新到磁盘并记录检查点（输出文件名.ckpt），
+     *                  存在检查点时截断到最后一个完整的数据块，从检查点的主键值之后继续导出
+     *     --lob-threshold N <可选>BLOB和CLOB超过N KB（CLOB按字符数）时按流写入旁路文件（输出文件名.lob），
+     *                  数据块中只保存引用，默认为1024
+     *     --dict-size N <可选>每个数据块中每个字符串列的字典最多包含的值个数，重复的短字符串只写入字典中的编号，
+     *                  为0时不使用字典，默认为256
+     *     --chunk-rows N <可选>每个数据块的行数，如果未设置，则按实测的行宽和压缩率使数据块压缩后约为256KB
+     *     --chunk-bytes N <可选>每个数据块压缩前的数据量上限（KB），如果未设置，则按实测的压缩率计算
      */
     @Override
     public void parseArguments(Map<String, String> args) {
@@ -51,15 +162,135 @@ public class ExportProcessor extends Processor{
         this.argLimit = checkOptionalArgumentInt(args, "limit", Integer.MAX_VALUE);
         this.argFeedback = checkOptionalArgumentInt(args, "feedback", 10000);
         this.argOutputFile = checkMandatoryArgumentString(args, "output");
+        this.argThreads = checkOptionalArgumentInt(args, "threads", 1);
+        this.argKey = checkOptionalArgumentString(args, "key", "");
+        this.argRanges = checkOptionalArgumentString(args, "ranges", "");
+        this.argPartitions = checkOptionalArgumentInt(args, "partitions", argThreads);
+        this.argCompressThreads = checkOptionalArgumentInt(args, "compress-threads", Math.min(4, Runtime.getRuntime().availableProcessors()));
+        this.argFetchSize = checkOptionalArgumentInt(args, "fetch-size", 0);
+        this.argFetchMemory = checkOptionalArgumentInt(args, "fetch-memory", 16);
+        this.argCodec = Codec.parse(checkOptionalArgumentString(args, "codec", "gzip"));
+        String layout = checkOptionalArgumentString(args, "layout", "row");
+        if(layout.equalsIgnoreCase("row"))
+            this.argColumnar = false;
+        else if(layout.equalsIgnoreCase("column"))
+            this.argColumnar = true;
+        else
+            throw new RuntimeException(String.format("Unsupported layout: %s", layout));
+        this.argWatermark = checkOptionalArgumentString(args, "watermark", "");
+        this.argState = checkOptionalArgumentString(args, "state", "");
+        this.argResume = checkOptionalArgumentBool(args, "resume", false);
+        this.argLobThreshold = checkOptionalArgumentInt(args, "lob-threshold", 1024);
+        if(argLobThreshold < 1 || argLobThreshold > 1024 * 1024)
+            throw new RuntimeException(String.format("The parameter lob-threshold is not a valid integer: %d", argLobThreshold));
+        this.argDictSize = checkOptionalArgumentInt(args, "dict-size", 256);
+        if(argDictSize < 0)
+            throw new RuntimeException(String.format("The parameter dict-size is not a valid integer: %d", argDictSize));
+        this.argChunkRows = checkOptionalArgumentInt(args, "chunk-rows", 0);
+        if(argChunkRows < 0)
+            throw new RuntimeException(String.format("The parameter chunk-rows is not a valid integer: %d", argChunkRows));
+        this.argChunkBytes = checkOptionalArgumentInt(args, "chunk-bytes", 0);
+        if(argChunkBytes < 0 || argChunkBytes > 1024 * 1024)
+            throw new RuntimeException(String.format("The parameter chunk-bytes is not a valid integer: %d", argChunkBytes));
 
         if(argTableName.isEmpty() && argSQL.isEmpty())
             throw new RuntimeException("Parameter \"table\" or \"sql\" must be specified");
+
+        if(argOutputFile.equals(DataFile.STDIO)) {
+            redirectLogToStderr();
+            if(argResume)
+                throw new RuntimeException("Parameter \"resume\" is not supported when writing to stdout");
+        }
+
+        if(!argWatermark.isEmpty()) {
+            if(argTableName.isEmpty() || !argSQL.isEmpty())
+                throw new RuntimeException("Parameter \"table\" must be specified instead of \"sql\" in incremental mode");
+            if(argState.isEmpty())
+                throw new RuntimeException("Parameter \"state\" must be specified in incremental mode");
+            if(argLimit != Integer.MAX_VALUE)
+                throw new RuntimeException("Parameter \"limit\" is not supported in incremental mode");
+        }
+
+        if(argResume) {
+            if(argTableName.isEmpty() || !argSQL.isEmpty())
+                throw new RuntimeException("Parameter \"table\" must be specified instead of \"sql\" in resume mode");
+            if(argKey.isEmpty())
+                throw new RuntimeException("Parameter \"key\" must be specified in resume mode");
+            if(argThreads > 1 || !argWatermark.isEmpty() || argLimit != Integer.MAX_VALUE)
+                throw new RuntimeException("Parameter \"threads\", \"watermark\" and \"limit\" are not supported in resume mode");
+            if(!splitOrderBy(argWhere)[1].isEmpty())
+                throw new RuntimeException("Parameter \"where\" must not contain order by in resume mode");
+        }
+
+        if(argThreads > 1) {
+            if(argTableName.isEmpty() || !argSQL.isEmpty())
+                throw new RuntimeException("Parameter \"table\" must be specified instead of \"sql\" in parallel mode");
+            if(argKey.isEmpty())
+                throw new RuntimeException("Parameter \"key\" must be specified in parallel mode");
+            if(argLimit != Integer.MAX_VALUE)
+                throw new RuntimeException("Parameter \"limit\" is not supported in parallel mode");
+            if(argPartitions < 1)
+                throw new RuntimeException(String.format("The parameter partitions is not a valid integer: %d", argPartitions));
+            if(!splitOrderBy(argWhere)[1].isEmpty())
+                throw new RuntimeException("Parameter \"where\" must not contain order by in parallel mode");
+        }
     }
 
     @Override
     public void process() throws Exception {
+        String where = argWhere;
+        DeltaInfo delta = null;
+        WatermarkState state = null;
+
+        //增量导出：只导出上次水位之后、当前最高水位之前的行
+        if(!argWatermark.isEmpty()) {
+            state = loadState();
+            WatermarkState next = queryWatermark(where, state);
+            String condition = String.format("%s <= %s", argWatermark, formatWatermark(next));
+            if(next.value == null)
+                condition = "1 = 0";
+            else if(state != null)
+                condition = String.format("%s > %s and %s", argWatermark, formatWatermark(state), condition);
+            where = appendCondition(where, condition);
+
+            delta = new DeltaInfo(state == null ? null : state.file, argWatermark, state == null ? null : state.value, next.value);
+            printMsg(LogLevel.INFO, String.format("Watermark %s: (%s, %s]", argWatermark, delta.getFrom() == null ? "" : delta.getFrom(), next.value == null ? "" : next.value));
+            state = next;
+        }
+
+        //写入标准输出时大对象也写入数据块
+        lobs = argOutputFile.equals(DataFile.STDIO) ? null : new LobFile(argOutputFile, true, argLobThreshold * 1024);
+        try {
+            if(argThreads > 1)
+                exportParallel(where, delta);
+            else
+                exportSequential(where, delta);
+        } finally {
+            if(lobs != null)
+                lobs.close();
+        }
+        if(lobs != null && new File(lobs.getFilename()).exists()) {
+            printMsg(LogLevel.INFO, String.format("LOB file: %s, %s bytes", lobs.getFilename(), new DecimalFormat("#,###").format(lobs.length())));
+            this.setResultInfo("lobSize", lobs.length());
+        }
+
+        if(state != null) {
+            saveState(state);
+            this.setResultInfo("watermark", state.value);
+        }
+        this.setResultInfo("metrics", metrics.toMap());
+    }
+
+    private void exportSequential(String where, DeltaInfo delta) throws SQLException, IOException {
         String sql = argSQL;
 
+        //续传：从检查点的主键值之后继续，按主键排序
+        Checkpoint checkpoint = argResume ? loadCheckpoint() : null;
+        if(checkpoint != null) {
+            where = appendCondition(where, String.format("%s > %s", argKey, formatValue(checkpoint.type, checkpoint.value)));
+            printMsg(LogLevel.INFO, String.format("Resume from %s > %s, %d rows exported", argKey, checkpoint.value, checkpoint.rows));
+        }
+
         //生成SQL语句
         if(sql.isEmpty()) {
             StringBuilder sb = new StringBuilder();
@@ -68,33 +299,715 @@ public class ExportProcessor extends Processor{
             sb.append(" from ");
             sb.append(argTableName);
 
-            if (!argWhere.isEmpty()) {
-                if(argWhere.length() < 5 || !argWhere.substring(0, 5).equalsIgnoreCase("where"))
+            if (!where.isEmpty()) {
+                if(where.length() < 5 || !where.substring(0, 5).equalsIgnoreCase("where"))
                     sb.append(" where");
-                sb.append(" ").append(argWhere);
+                sb.append(" ").append(where);
             }
+            if(argResume)
+                sb.append(" order by ").append(argKey);
             sql = sb.toString();
         }
         printMsg(LogLevel.INFO, String.format("SQL: %s", sql));
 
-        exportData(sql);
+        exportData(sql, delta, checkpoint);
     }
 
-    private void exportData(String sql) throws SQLException, IOException {
+    private void exportData(String sql, DeltaInfo delta, Checkpoint checkpoint) throws SQLException, IOException {
         FieldType[] fieldTypes;
-        String[] fieldTypeNames;
+
+        //MySQL流式读取期间不能在同一连接上执行其他语句，先获取建表语句
+        String ddl = argTableName.isEmpty() || checkpoint != null ? null : getTableDDL(argTableName);
 
         //导出
+        FetchSizeTuner tuner = createFetchSizeTuner();
+        RelationalDB db = getRelationalDB();
+        boolean autoCommit = this.getConnection().getAutoCommit();
+        Statement stmt = db.createStreamingStatement(this.getConnection(), tuner.getFetchSize());
+        try {
+            printMsg(LogLevel.INFO, "Execute query ...");
+            long tick = System.nanoTime();
+            ResultSet rs = stmt.executeQuery(sql);
+            metrics.add("execute", System.nanoTime() - tick);
+            tuner.attach(rs);
+            ResultSetMetaData md = rs.getMetaData();
+            fieldTypes = new FieldType[md.getColumnCount()];
+
+            DataFile file;
+            long rows_offset;
+            ChunkWriter writer;
+            Partition all = new Partition();
+            if(checkpoint == null) {
+                //删除已有文件，或者写入标准输出
+                file = DataFile.openOutput(argOutputFile);
+                if(lobs != null)
+                    lobs.delete();
+
+                //写文件头
+                rows_offset = writeHeader(file, ddl, delta, md, fieldTypes);
+                writer = newChunkWriter(file);
+            }
+            else {
+                //截断到检查点，重建已有数据块的索引
+                file = new DataFile(argOutputFile, "rw");
+                writer = newChunkWriter(file);
+                rows_offset = resumeFile(file, checkpoint, md, fieldTypes, writer, all);
+                if(checkpoint.lobOffset > 0)
+                    lobs.truncate(checkpoint.lobOffset);
+                else
+                    lobs.delete();
+            }
+            clobFields = getClobFields(md);
+            scales = getScales(md, fieldTypes);
+
+            if(argResume) {
+                resumeKeyIndex = findColumn(md, argKey);
+                resumeKeyType = getValueType(md, resumeKeyIndex);
+                writer.setCheckpointListener((ckpt, offset, total) -> saveCheckpoint(file, (Checkpoint) ckpt, offset, total));
+            }
+
+            printMsg(LogLevel.INFO, "Start ...");
+
+            exportRows(rs, fieldTypes, writer, tuner, all, new AtomicInteger(all.rows), argLimit);
+            writer.close();
+
+            int rows = all.rows;
+            long actual_bytes = all.bytes;
+            finishFile(file, writer, rows_offset, rows, actual_bytes);
+            if(argResume)
+                new File(argOutputFile + ".ckpt").delete();
+
+            printMsg(LogLevel.INFO, String.format("Total: %d rows", rows));
+            DecimalFormat df = new DecimalFormat("#,###");
+            printMsg(LogLevel.INFO, String.format("Total original size: %s bytes", df.format(actual_bytes)));
+
+            this.setResultInfo("rows", rows);
+            this.setResultInfo("size", actual_bytes);
+            this.setResultInfo("chunkRows", all.chunkRows);
+            this.setResultInfo("chunkBytes", all.chunkBytes);
+            setChunkInfo(writer);
+        } finally {
+            db.closeStreamingStatement(stmt, autoCommit);
+        }
+    }
+
+    /**
+     * 按主键区间将表划分为多个分区，由多个线程各自使用独立的连接并行导出到同一个数据文件。
+     * 各分区的数据块按完成顺序写入文件，因此导出文件中的行顺序与主键顺序无关。
+     */
+    private void exportParallel(String where, DeltaInfo delta) throws Exception {
+        where = splitOrderBy(where)[0];
+
+        //生成SQL语句
+        StringBuilder sb = new StringBuilder();
+        sb.append("select ");
+        sb.append(argFields.isEmpty() ? "*" : argFields);
+        sb.append(" from ");
+        sb.append(argTableName);
+        sb.append(" where ");
+        if(!where.isEmpty())
+            sb.append("(").append(where).append(") and ");
+        String sql = sb.toString();
+
+        //划分区间
+        List<Partition> partitions = createPartitions(argRanges.isEmpty() ? splitKeyRange(where) : readKeyRanges());
+        printMsg(LogLevel.INFO, String.format("SQL: %s<partition>", sql));
+        printMsg(LogLevel.INFO, String.format("%d partitions, %d threads", partitions.size(), argThreads));
+
+        //读取列信息
         Statement stmt = this.getConnection().createStatement();
-        printMsg(LogLevel.INFO, "Execute query ...");
-        ResultSet rs = stmt.executeQuery(sql);
+        ResultSet rs = stmt.executeQuery(sql + "1 = 0");
         ResultSetMetaData md = rs.getMetaData();
-        fieldTypes = new FieldType[md.getColumnCount()];
-        fieldTypeNames = new String[md.getColumnCount()];
+        FieldType[] fieldTypes = new FieldType[md.getColumnCount()];
+
+        //删除已有文件，或者写入标准输出
+        DataFile file = DataFile.openOutput(argOutputFile);
+        if(lobs != null)
+            lobs.delete();
+
+        //写文件头
+        long rows_offset = writeHeader(file, getTableDDL(argTableName), delta, md, fieldTypes);
+        clobFields = getClobFields(md);
+        scales = getScales(md, fieldTypes);
+        rs.close();
+        stmt.close();
+
+        printMsg(LogLevel.INFO, "Start ...");
+
+        //并行导出
+        ChunkWriter writer = newChunkWriter(file);
+        Queue<Partition> queue = new ConcurrentLinkedQueue<>(partitions);
+        AtomicInteger progress = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(argThreads);
+        List<Future<?>> futures = new ArrayList<>();
+        for(int i=0; i<argThreads; i++) {
+            futures.add(pool.submit(() -> {
+                try {
+                    exportPartitions(queue, sql, fieldTypes, writer, progress);
+                } catch (Throwable e) {
+                    //其余线程导出完当前分区后停止
+                    queue.clear();
+                    throw e;
+                }
+                return null;
+            }));
+        }
+        pool.shutdown();
+
+        try {
+            for (Future<?> future : futures)
+                future.get();
+            writer.close();
+        } catch (ExecutionException e) {
+            try {
+                writer.close();
+            } catch (IOException ignored) {
+            }
+            file.close();
+            if(e.getCause() instanceof Exception)
+                throw (Exception) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+
+        int rows = 0;
+        long actual_bytes = 0;
+        List<Map<String, Object>> partitionInfo = new ArrayList<>();
+        for(Partition p : partitions) {
+            rows += p.rows;
+            actual_bytes += p.bytes;
+
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("partition", p.index);
+            info.put("range", p.condition);
+            info.put("rows", p.rows);
+            info.put("size", p.bytes);
+            info.put("cost", p.cost);
+            info.put("chunkRows", p.chunkRows);
+            info.put("chunkBytes", p.chunkBytes);
+            partitionInfo.add(info);
+        }
+
+        finishFile(file, writer, rows_offset, rows, actual_bytes);
+
+        printMsg(LogLevel.INFO, String.format("Total: %d rows", rows));
+        DecimalFormat df = new DecimalFormat("#,###");
+        printMsg(LogLevel.INFO, String.format("Total original size: %s bytes", df.format(actual_bytes)));
+
+        this.setResultInfo("rows", rows);
+        this.setResultInfo("size", actual_bytes);
+        this.setResultInfo("partitions", partitionInfo);
+        setChunkInfo(writer);
+    }
+
+    private ChunkWriter newChunkWriter(DataFile file) {
+        ChunkWriter writer = new ChunkWriter(file, argCompressThreads, argCodec);
+        writer.setMetrics(metrics);
+        return writer;
+    }
+
+    /**
+     * 记录写入的数据块数和平均大小
+     */
+    private void setChunkInfo(ChunkWriter writer) {
+        int chunks = writer.getChunks();
+        if(chunks == 0)
+            return;
+
+        DecimalFormat df = new DecimalFormat("#,###");
+        printMsg(LogLevel.INFO, String.format("Chunks: %d, average %s bytes, %s bytes compressed", chunks,
+                df.format(writer.getRawBytes() / chunks), df.format(writer.getStoredBytes() / chunks)));
+        this.setResultInfo("chunks", chunks);
+        this.setResultInfo("compressedSize", writer.getStoredBytes());
+    }
+
+    /**
+     * 工作线程：不断领取分区并导出，直到没有剩余分区
+     */
+    private void exportPartitions(Queue<Partition> queue, String sql, FieldType[] fieldTypes, ChunkWriter writer, AtomicInteger progress) throws SQLException, IOException {
+        try (Connection conn = openConnection()) {
+            Partition p;
+            while ((p = queue.poll()) != null) {
+                long tick = System.currentTimeMillis();
+
+                FetchSizeTuner tuner = createFetchSizeTuner();
+                RelationalDB db = getRelationalDB();
+                boolean autoCommit = conn.getAutoCommit();
+                Statement stmt = db.createStreamingStatement(conn, tuner.getFetchSize());
+                try {
+                    long start = System.nanoTime();
+                    ResultSet rs = stmt.executeQuery(sql + p.condition);
+                    metrics.add("execute", System.nanoTime() - start);
+                    tuner.attach(rs);
+                    if(rs.getMetaData().getColumnCount() != fieldTypes.length)
+                        throw new RuntimeException(String.format("Partition #%d returns %d fields, expect %d", p.index, rs.getMetaData().getColumnCount(), fieldTypes.length));
+
+                    exportRows(rs, fieldTypes, writer, tuner, p, progress, Integer.MAX_VALUE);
+                } finally {
+                    db.closeStreamingStatement(stmt, autoCommit);
+                }
+
+                p.cost = System.currentTimeMillis() - tick;
+                printMsg(LogLevel.INFO, String.format("Partition #%d (%s): %d rows", p.index, p.condition, p.rows));
+            }
+        }
+    }
+
+    /**
+     * 将结果集中的行按数据块提交给写入流水线
+     * @param p 输出：累计行数和原始数据量
+     * @param progress 所有线程共用的进度计数
+     * @param limit 最多导出的行数
+     */
+    private void exportRows(ResultSet rs, FieldType[] fieldTypes, ChunkWriter writer, FetchSizeTuner tuner,
+                            Partition p, AtomicInteger progress, int limit) throws SQLException, IOException {
+        int batch = 0;
+        long size = 0;
+        ChunkBuffer chunk = argColumnar ? null : writer.newChunk();
+        ColumnChunk columns = argColumnar ? writer.newColumnChunk(fieldTypes.length) : null;
+        ChunkStats stats = new ChunkStats(fieldTypes);
+        StringDictionary dict = new StringDictionary(fieldTypes.length, argDictSize);
+        DeltaOfDelta deltas = new DeltaOfDelta(fieldTypes.length);
+        ChunkSizer sizer = new ChunkSizer(writer, CHUNK_TARGET_BYTES, argChunkRows, argChunkBytes * 1024L);
+        long batchStart = System.nanoTime(), tick = batchStart, now;
+
+        while (rs.next()) {
+            now = System.nanoTime();
+            metrics.add("fetch", now - tick);
+            tick = now;
 
-        //删除文件
-        new File(argOutputFile).delete();
-        DataFile file = new DataFile(argOutputFile, "rw");
+            int rowBytes;
+            if(columns != null)
+                rowBytes = writeRow(rs, fieldTypes, columns, stats, lobs, clobFields, scales, dict, deltas);
+            else {
+                int start = chunk.size();
+                writeRow(rs, fieldTypes, chunk, stats, lobs, clobFields, scales, dict, deltas);
+                rowBytes = chunk.size() - start;
+            }
+            tuner.onRow(rowBytes);
+            now = System.nanoTime();
+            metrics.add("encode", now - tick);
+            tick = now;
+
+            batch += 1;
+            size += rowBytes;
+            p.rows += 1;
+
+            if(sizer.isFull(batch, size)) {
+                Checkpoint checkpoint = resumeKeyIndex > 0 ? newCheckpoint(rs) : null;
+                if(columns != null) {
+                    p.bytes += flushChunk(writer, columns, stats, checkpoint);
+                    columns = writer.newColumnChunk(fieldTypes.length);
+                }
+                else {
+                    p.bytes += flushChunk(writer, chunk, batch, stats, checkpoint);
+                    chunk = writer.newChunk();
+                }
+                stats = new ChunkStats(fieldTypes);
+                dict.reset();
+                deltas.reset();
+                sizer.onFlush(batch, size);
+                //提交数据块在流水线阻塞时等待的时间计入该批，不计入fetch
+                tick = System.nanoTime();
+                metrics.addBatch(batch, tick - batchStart);
+                batchStart = tick;
+                batch = 0;
+                size = 0;
+            }
+
+            if((progress.incrementAndGet() % argFeedback) == 0) {
+                printMsg(LogLevel.INFO, String.format("%d rows ...", progress.get()));
+            }
+            if(p.rows >= limit)
+                break;
+        }
+
+        if(batch > 0) {
+            if(columns != null)
+                p.bytes += flushChunk(writer, columns, stats, null);
+            else
+                p.bytes += flushChunk(writer, chunk, batch, stats, null);
+            metrics.addBatch(batch, System.nanoTime() - batchStart);
+        }
+        p.chunkRows = sizer.getMaxRows();
+        p.chunkBytes = sizer.getMaxBytes();
+    }
+
+    /**
+     * 读取增量导出的状态文件
+     * @return 状态，首次导出时返回null
+     */
+    private WatermarkState loadState() throws IOException {
+        File file = new File(argState);
+        if(!file.exists())
+            return null;
+
+        WatermarkState state = new Gson().fromJson(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), WatermarkState.class);
+        if(state == null || state.value == null)
+            return null;
+        if(!argWatermark.equalsIgnoreCase(state.column) || !argTableName.equalsIgnoreCase(state.table))
+            throw new RuntimeException(String.format("State file %s is for %s.%s, not %s.%s", argState, state.table, state.column, argTableName, argWatermark));
+        return state;
+    }
+
+    /**
+     * 原子地替换状态文件，导出失败时保留上一次的状态
+     */
+    private void saveState(WatermarkState state) throws IOException {
+        //写入标准输出时没有文件路径，按原样记录"-"
+        state.file = argOutputFile.equals(DataFile.STDIO) ? DataFile.STDIO : new File(argOutputFile).getAbsolutePath();
+        state.time = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new java.util.Date());
+
+        File tmp = new File(argState + ".tmp");
+        Files.write(tmp.toPath(), new Gson().toJson(state).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp.toPath(), Paths.get(argState), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 查询当前的最高水位，在导出开始之前确定上界，导出期间新写入的行留给下一次导出
+     * @param state 上一次导出的状态，首次导出为null
+     * @return 新的状态，表中没有数据时沿用上一次的水位
+     */
+    private WatermarkState queryWatermark(String where, WatermarkState state) throws SQLException {
+        String condition = splitOrderBy(where)[0];
+        String sql = String.format("select max(%s) from %s", argWatermark, argTableName);
+        if(!condition.isEmpty())
+            sql += " where " + condition;
+
+        WatermarkState next = new WatermarkState();
+        next.table = argTableName;
+        next.column = argWatermark;
+
+        Statement stmt = this.getConnection().createStatement();
+        ResultSet rs = stmt.executeQuery(sql);
+        rs.next();
+        switch (rs.getMetaData().getColumnType(1)) {
+            case Types.DATE:
+            case Types.TIMESTAMP:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                next.type = "timestamp";
+                Timestamp ts = rs.getTimestamp(1);
+                next.value = ts == null ? null : ts.toString();
+                break;
+            default:
+                next.type = "number";
+                java.math.BigDecimal n = rs.getBigDecimal(1);
+                next.value = n == null ? null : n.toPlainString();
+                break;
+        }
+        rs.close();
+        stmt.close();
+
+        if(state != null) {
+            if(!state.type.equals(next.type) && next.value != null)
+                throw new RuntimeException(String.format("Watermark type changed from %s to %s", state.type, next.type));
+            if(next.value == null) {
+                next.type = state.type;
+                next.value = state.value;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * 生成水位常量
+     */
+    private String formatWatermark(WatermarkState state) {
+        return formatValue(state.type, state.value);
+    }
+
+    /**
+     * 生成可以拼接在SQL语句中的常量
+     * @param type number、timestamp或string
+     */
+    private String formatValue(String type, String value) {
+        if(type.equals("timestamp"))
+            return getRelationalDB().formatTimestamp(Timestamp.valueOf(value));
+        else if(type.equals("string"))
+            return "'" + value.replace("'", "''") + "'";
+        return value;
+    }
+
+    /**
+     * 按列类型确定检查点中主键值的类型
+     */
+    private static String getValueType(ResultSetMetaData md, int column) throws SQLException {
+        switch (md.getColumnType(column)) {
+            case Types.DATE:
+            case Types.TIMESTAMP:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                return "timestamp";
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+                return "string";
+            case Types.INTEGER:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+            case Types.BIGINT:
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return "number";
+            default:
+                throw new RuntimeException(String.format("Unsupported key '%s' data type: %s", md.getColumnLabel(column), md.getColumnTypeName(column)));
+        }
+    }
+
+    private static String readValue(ResultSet rs, int column, String type) throws SQLException {
+        String value;
+        if(type.equals("timestamp")) {
+            Timestamp ts = rs.getTimestamp(column);
+            value = ts == null ? null : ts.toString();
+        }
+        else if(type.equals("string"))
+            value = rs.getString(column);
+        else {
+            java.math.BigDecimal n = rs.getBigDecimal(column);
+            value = n == null ? null : n.toPlainString();
+        }
+        if(value == null)
+            throw new RuntimeException("Key value is null in resume mode");
+        return value;
+    }
+
+    private static int findColumn(ResultSetMetaData md, String name) throws SQLException {
+        for(int i=1; i<=md.getColumnCount(); i++) {
+            if(md.getColumnLabel(i).equalsIgnoreCase(name))
+                return i;
+        }
+        throw new RuntimeException(String.format("Key \"%s\" must be one of the exported fields", name));
+    }
+
+    private File getCheckpointFile() {
+        return new File(argOutputFile + ".ckpt");
+    }
+
+    /**
+     * 读取检查点
+     * @return 检查点，不存在时返回null
+     */
+    private Checkpoint loadCheckpoint() throws IOException {
+        File file = getCheckpointFile();
+        if(!file.exists())
+            return null;
+
+        Checkpoint checkpoint = new Gson().fromJson(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), Checkpoint.class);
+        if(!argTableName.equalsIgnoreCase(checkpoint.table) || !argKey.equalsIgnoreCase(checkpoint.key))
+            throw new RuntimeException(String.format("Checkpoint %s is for %s.%s, not %s.%s", file, checkpoint.table, checkpoint.key, argTableName, argKey));
+        if(!new File(argOutputFile).exists())
+            throw new RuntimeException(String.format("Output file %s not found for checkpoint %s", argOutputFile, file));
+        return checkpoint;
+    }
+
+    /**
+     * 提交数据块时创建检查点，记录数据块最后一行的主键值和此时旁路文件的长度
+     */
+    private Checkpoint newCheckpoint(ResultSet rs) throws SQLException, IOException {
+        Checkpoint checkpoint = new Checkpoint();
+        checkpoint.table = argTableName;
+        checkpoint.key = argKey;
+        checkpoint.type = resumeKeyType;
+        checkpoint.value = readValue(rs, resumeKeyIndex, resumeKeyType);
+        checkpoint.lobOffset = lobs.length();
+        return checkpoint;
+    }
+
+    /**
+     * 数据块写入后在写入线程中记录检查点，先将数据刷新到磁盘，再原子地替换检查点文件。
+     * 每秒最多记录一次，中断后最多重新导出一秒的数据
+     */
+    private void saveCheckpoint(DataFile file, Checkpoint checkpoint, long offset, int rows) throws IOException {
+        long now = System.currentTimeMillis();
+        if(now - lastCheckpointTime < 1000)
+            return;
+        lastCheckpointTime = now;
+
+        lobs.sync();
+        file.sync();
+
+        checkpoint.offset = offset;
+        checkpoint.rows = rows;
+        checkpoint.time = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new java.util.Date());
+
+        File tmp = new File(argOutputFile + ".ckpt.tmp");
+        Files.write(tmp.toPath(), new Gson().toJson(checkpoint).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp.toPath(), getCheckpointFile().toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 续传：检查文件头与查询结果的列一致，将文件截断到检查点，重建检查点之前的数据块索引
+     * @param all 输出：检查点之前的行数和原始数据量
+     * @return 总行数在文件中的位置
+     */
+    private static long resumeFile(DataFile file, Checkpoint checkpoint, ResultSetMetaData md, FieldType[] fieldTypes,
+                                   ChunkWriter writer, Partition all) throws SQLException, IOException {
+        String[] fieldTypeNames = new String[fieldTypes.length];
+        mapFieldTypes(md, fieldTypes, fieldTypeNames);
+
+        if(file.readInteger() != MAGIC_CODE || file.readShort() != FILE_FORMAT)
+            throw new RuntimeException("Can't resume: output file is not written by this version");
+        byte flag = (byte) file.readByte();
+        if(flag == StartFlag.DDL.ordinal()) {
+            file.readString();
+            flag = (byte) file.readByte();
+        }
+        if(flag == StartFlag.Delta.ordinal()) {
+            DeltaInfo.read(file);
+            flag = (byte) file.readByte();
+        }
+        if(flag != StartFlag.FieldInfo.ordinal() || file.readShort() != fieldTypes.length)
+            throw new RuntimeException("Can't resume: fields of output file changed");
+        int[] scales = getScales(md, fieldTypes);
+        for(int i=0; i<fieldTypes.length; i++) {
+            FieldType type = FieldType.fromInt(file.readByte());
+            file.readString();
+            String name = file.readString();
+            int scale = type == FieldType.Decimal ? file.readByte() : 0;
+            if(type != fieldTypes[i] || scale != scales[i] || !md.getColumnLabel(i + 1).equals(name))
+                throw new RuntimeException(String.format("Can't resume: field #%d of output file changed", i + 1));
+        }
+
+        long rows_offset = file.getFilePointer();
+        file.seek(rows_offset + 4 + 8 + 8);
+        file.setLength(checkpoint.offset);
+
+        //逐个跳过数据块，不解压
+        while (file.getFilePointer() < checkpoint.offset) {
+            long offset = file.getFilePointer();
+            flag = (byte) file.readByte();
+            int rows = file.readInteger();
+            ChunkStats.read(file, fieldTypes, rows);
+            int parts = flag == StartFlag.DataRow.ordinal() ? 1 : fieldTypes.length * 2;
+            for(int i=0; i<parts; i++)
+                all.bytes += file.skipChunk();
+            writer.addIndex(offset, rows);
+            all.rows += rows;
+        }
+        if(file.getFilePointer() != checkpoint.offset || all.rows != checkpoint.rows)
+            throw new RuntimeException("Can't resume: output file does not match checkpoint");
+        return rows_offset;
+    }
+
+    /**
+     * 在导出条件中追加条件，原条件中的order by保留在最后
+     */
+    private static String appendCondition(String where, String condition) {
+        String[] parts = splitOrderBy(where);
+        String s = parts[0].isEmpty() ? condition : String.format("(%s) and %s", parts[0], condition);
+        return parts[1].isEmpty() ? s : s + " " + parts[1];
+    }
+
+    /**
+     * 拆分导出条件
+     * @return 去掉where关键字的条件和order by子句
+     */
+    private static String[] splitOrderBy(String where) {
+        where = where.trim();
+        if(where.length() >= 5 && where.substring(0, 5).equalsIgnoreCase("where"))
+            where = where.substring(5).trim();
+
+        int pos = -1;
+        Matcher m = Pattern.compile("\\border\\s+by\\b", Pattern.CASE_INSENSITIVE).matcher(where);
+        while (m.find())
+            pos = m.start();
+        if(pos < 0)
+            return new String[] {where, ""};
+        return new String[] {where.substring(0, pos).trim(), where.substring(pos).trim()};
+    }
+
+    private FetchSizeTuner createFetchSizeTuner() {
+        return new FetchSizeTuner(getRelationalDB(), argFetchMemory * 1024L * 1024L, argFetchSize);
+    }
+
+    /**
+     * 按主键的最小值和最大值均分区间
+     * @param where 导出条件
+     * @return 区间分界值
+     */
+    private List<Long> splitKeyRange(String where) throws SQLException {
+        List<Long> bounds = new ArrayList<>();
+        String sql = String.format("select min(%s), max(%s) from %s", argKey, argKey, argTableName);
+        if(!where.isEmpty())
+            sql += " where " + where;
+
+        Statement stmt = this.getConnection().createStatement();
+        ResultSet rs = stmt.executeQuery(sql);
+        rs.next();
+        long min = rs.getLong(1);
+        boolean empty = rs.wasNull();
+        long max = rs.getLong(2);
+        rs.close();
+        stmt.close();
+
+        if(!empty) {
+            BigInteger lo = BigInteger.valueOf(min);
+            BigInteger span = BigInteger.valueOf(max).subtract(lo).add(BigInteger.ONE);
+            for(int i=1; i<argPartitions; i++) {
+                long bound = lo.add(span.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(argPartitions))).longValue();
+                if(bound > min && (bounds.isEmpty() || bound > bounds.get(bounds.size() - 1)))
+                    bounds.add(bound);
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * 从sample命令输出的文件中读取区间，每行格式为“起始值,结束值,行数”
+     * @return 区间分界值
+     */
+    private List<Long> readKeyRanges() throws IOException {
+        List<Long> bounds = new ArrayList<>();
+        int lineno = 0;
+        for(String line : Files.readAllLines(Paths.get(argRanges), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if(line.isEmpty())
+                continue;
+            lineno += 1;
+            //第一个区间没有下界
+            if(lineno == 1)
+                continue;
+            try {
+                long bound = Long.parseLong(line.split(",")[0].trim());
+                if(bounds.isEmpty() || bound > bounds.get(bounds.size() - 1))
+                    bounds.add(bound);
+            } catch (NumberFormatException e) {
+                throw new RuntimeException(String.format("Bad range line in %s: %s", argRanges, line), e);
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * 根据分界值生成首尾相接的分区条件，首尾分区不设边界，另外单独导出主键为空的行
+     */
+    private List<Partition> createPartitions(List<Long> bounds) {
+        List<String> conditions = new ArrayList<>();
+        if(bounds.isEmpty())
+            conditions.add(String.format("%s is not null", argKey));
+        else {
+            conditions.add(String.format("%s < %d", argKey, bounds.get(0)));
+            for(int i=1; i<bounds.size(); i++)
+                conditions.add(String.format("%s >= %d and %s < %d", argKey, bounds.get(i - 1), argKey, bounds.get(i)));
+            conditions.add(String.format("%s >= %d", argKey, bounds.get(bounds.size() - 1)));
+        }
+        conditions.add(String.format("%s is null", argKey));
+
+        List<Partition> partitions = new ArrayList<>();
+        for(String condition : conditions) {
+            Partition p = new Partition();
+            p.index = partitions.size() + 1;
+            p.condition = condition;
+            partitions.add(p);
+        }
+        return partitions;
+    }
+
+    /**
+     * 写文件头：标识、格式版本、建表语句和列信息，并预留总行数和数据量
+     * @return 总行数在文件中的位置
+     */
+    private long writeHeader(DataFile file, String ddl, DeltaInfo delta, ResultSetMetaData md, FieldType[] fieldTypes) throws SQLException, IOException {
+        String[] fieldTypeNames = new String[fieldTypes.length];
 
         //写标识
         file.writeInteger(MAGIC_CODE);
@@ -103,19 +1016,77 @@ public class ExportProcessor extends Processor{
         file.writeShort(FILE_FORMAT);
 
         //写建表语句
-        if(!argTableName.isEmpty()) {
-            String ddl = getTableDDL(argTableName);
-            if(ddl != null) {
-                file.writeByte((byte) StartFlag.DDL.ordinal());
-                file.writeString(ddl);
-            }
+        if(ddl != null) {
+            file.writeByte((byte) StartFlag.DDL.ordinal());
+            file.writeString(ddl);
+        }
+
+        //写增量导出信息
+        if(delta != null) {
+            file.writeByte((byte) StartFlag.Delta.ordinal());
+            delta.write(file);
         }
 
         //写列数量
         file.writeByte((byte) StartFlag.FieldInfo.ordinal());
         file.writeShort((short) fieldTypes.length);
 
+        mapFieldTypes(md, fieldTypes, fieldTypeNames);
+        int[] scales = getScales(md, fieldTypes);
+        for(int i=0; i<fieldTypes.length; i++) {
+            //写列类型
+            file.writeByte((byte) fieldTypes[i].ordinal());
+            //写列类型名称
+            file.writeString(fieldTypeNames[i]);
+            //写列名
+            file.writeString(md.getColumnLabel(i + 1));
+            //写定点数的小数位数
+            if(fieldTypes[i] == FieldType.Decimal)
+                file.writeByte((byte) scales[i]);
+        }
+
+        //准备写行数、数据量和索引位置，写完后定位回来更新，不能定位时只写在文件尾
+        long rows_offset = file.getFilePointer();
+        file.writeInteger(-1); //总行数，-1表示在文件尾
+        file.writeLong(0); //实际文件大小
+        file.writeLong(0); //数据块索引位置
+        return rows_offset;
+    }
+
+    /**
+     * 写文件结束标志、数据块索引和文件尾，可以定位时回填文件头中的总行数、数据量和索引位置
+     * @param writer 已经关闭的写入流水线
+     */
+    private static void finishFile(DataFile file, ChunkWriter writer, long rows_offset, int rows, long actual_bytes) throws IOException {
+        file.writeByte((byte) StartFlag.EOF.ordinal());
+        long index_offset = writer.writeIndex();
+
+        //文件尾：总行数、数据量和索引位置
+        file.writeInteger(rows);
+        file.writeLong(actual_bytes);
+        file.writeLong(index_offset);
+
+        if(file.isSeekable()) {
+            file.seek(rows_offset);
+            file.writeInteger(rows);
+            file.writeLong(actual_bytes);
+            file.writeLong(index_offset);
+        }
+        file.close();
+    }
 
+    /**
+     * Oracle的TIMESTAMP WITH TIME ZONE的列类型（oracle.jdbc.OracleTypes.TIMESTAMPTZ）
+     */
+    private static final int ORACLE_TIMESTAMPTZ = -101;
+
+    /**
+     * 将JDBC列类型映射为数据文件的列类型
+     * @param md 结果集元数据
+     * @param fieldTypes 输出：列类型
+     * @param fieldTypeNames 输出：列类型名称
+     */
+    static void mapFieldTypes(ResultSetMetaData md, FieldType[] fieldTypes, String[] fieldTypeNames) throws SQLException {
         for(int i=0; i<fieldTypes.length; i++) {
             int prec = md.getPrecision(i + 1);
             int scale = md.getScale(i + 1);
@@ -161,15 +1132,13 @@ public class ExportProcessor extends Processor{
                             fieldTypeNames[i] = "decimal";
                     }
 
-                    if(scale == 0) {
-                        if(prec <= 9)
-                            fieldTypes[i] = FieldType.Integer;
-                        else
-                            fieldTypes[i] = FieldType.Long;
-                    }
-                    else {
-                        fieldTypes[i] = FieldType.Double;
-                    }
+                    //小数、未指定精度（eg.Oracle的NUMBER）或超过long范围的整数按定点数精确存储
+                    if(scale == 0 && prec > 0 && prec <= 9)
+                        fieldTypes[i] = FieldType.Integer;
+                    else if(scale == 0 && prec > 9 && prec <= 18)
+                        fieldTypes[i] = FieldType.Long;
+                    else
+                        fieldTypes[i] = FieldType.Decimal;
                     break;
                 case Types.CHAR:
                 case Types.VARCHAR:
@@ -202,10 +1171,22 @@ public class ExportProcessor extends Processor{
                     fieldTypes[i] = FieldType.Date;
                     break;
                 case Types.TIMESTAMP:
+                    //PostgreSQL的timestamptz报告为TIMESTAMP，只能按类型名称区分
+                    if(md.getColumnTypeName(i + 1).equalsIgnoreCase("timestamptz")) {
+                        fieldTypeNames[i] = "datetimetz";
+                        fieldTypes[i] = FieldType.DateTimeTZ;
+                        break;
+                    }
                     fieldTypeNames[i] = "datetime";
 
                     fieldTypes[i] = FieldType.DateTime;
                     break;
+                case Types.TIMESTAMP_WITH_TIMEZONE:
+                case ORACLE_TIMESTAMPTZ:
+                    fieldTypeNames[i] = "datetimetz";
+
+                    fieldTypes[i] = FieldType.DateTimeTZ;
+                    break;
                 case Types.VARBINARY:
                 case Types.ROWID:
                 case Types.LONGVARBINARY:
@@ -216,122 +1197,395 @@ public class ExportProcessor extends Processor{
                 default:
                     throw new RuntimeException(String.format("Unsupport field '%s' data type: %d: %s", md.getColumnLabel(i + 1), md.getColumnType(i + 1), md.getColumnTypeName(i + 1)));
             }
-
-            //写列类型
-            file.writeByte((byte) fieldTypes[i].ordinal());
-            //写列类型名称
-            file.writeString(fieldTypeNames[i]);
-            //写列名
-            file.writeString(md.getColumnLabel(i + 1));
         }
+    }
 
-        //准备写行数和数据量
-        long rows_offset = file.getFilePointer();
-        file.writeInteger(0); //总行数
-        file.writeLong(0); //实际文件大小
+    /**
+     * 将结果集的当前行按行编码v2写入数据块，同时按读取时解码得到的值更新列统计信息。
+     * 行标志之后是空值位图（第i位为1表示第i列为空），之后依次是非空列的值：整数和长整数为zigzag varint，
+     * 字符串见StringDictionary，二进制为varint长度和数据，0表示旁路文件中的大对象引用，日期和时间见writeTemporal。
+     * 与之前的格式读取结果相同，空字符串和长度为0的二进制按空值存储。
+     * @param lobs 大对象旁路文件，为null时大对象也写入数据块
+     * @param clobFields 按流读取的文本列，可以为null
+     * @param scales 定点数列的小数位数
+     * @param dict 当前数据块的字符串字典
+     * @param deltas 当前数据块的日期和时间列的delta-of-delta编码状态
+     */
+    static void writeRow(ResultSet rs, FieldType[] fieldTypes, ChunkBuffer chunk, ChunkStats stats,
+                         LobFile lobs, boolean[] clobFields, int[] scales, StringDictionary dict,
+                         DeltaOfDelta deltas) throws SQLException, IOException {
+        chunk.writeByte((byte) StartFlag.DataRow.ordinal());
+        int bitmap = chunk.writeZeros((fieldTypes.length + 7) / 8);
 
-        printMsg(LogLevel.INFO, "Start ...");
+        for(int i=0; i<fieldTypes.length; i++) {
+            boolean isNull = false;
+            switch (fieldTypes[i]) {
+                case Null:
+                    isNull = true;
+                    break;
+                case Integer:
+                    int iVal = rs.getInt(i + 1);
+                    if(rs.wasNull())
+                        isNull = true;
+                    else {
+                        chunk.writeVarLong(ChunkBuffer.zigzag(iVal));
+                        stats.add(i, iVal);
+                    }
+                    break;
+                case Long:
+                    long lVal = rs.getLong(i + 1);
+                    if(rs.wasNull())
+                        isNull = true;
+                    else {
+                        chunk.writeVarLong(ChunkBuffer.zigzag(lVal));
+                        stats.add(i, lVal);
+                    }
+                    break;
+                case Double:
+                    double fVal = rs.getDouble(i + 1);
+                    if(rs.wasNull())
+                        isNull = true;
+                    else {
+                        chunk.writeDouble(fVal);
+                        stats.add(i, fVal);
+                    }
+                    break;
+                case Decimal:
+                    BigDecimal nVal = rs.getBigDecimal(i + 1);
+                    if(nVal == null)
+                        isNull = true;
+                    else {
+                        chunk.writeDecimal(nVal, scales[i]);
+                        stats.add(i, nVal);
+                    }
+                    break;
+                case String:
+                    Object text = clobFields != null && clobFields[i] ? readText(rs, i + 1, lobs) : rs.getString(i + 1);
+                    if(text instanceof long[]) {
+                        writeLobRef(chunk, (long[]) text, true);
+                        stats.addValue(i);
+                    }
+                    else if(text == null || ((String) text).isEmpty())
+                        isNull = true;
+                    else {
+                        dict.write(chunk, i, (String) text);
+                        stats.add(i, (String) text);
+                    }
+                    break;
+                case Date:
+                case DateTime:
+                case DateTimeTZ:
+                    Long temporal = writeTemporal(rs, i, fieldTypes[i], chunk, deltas);
+                    if(temporal == null)
+                        isNull = true;
+                    else
+                        stats.add(i, temporal);
+                    break;
+                case Binary:
+                    if(writeBinary(chunk, rs.getBinaryStream(i + 1), lobs, true))
+                        stats.addValue(i);
+                    else
+                        isNull = true;
+                    break;
+                default:
+                    assert false;
+            }
 
-        int batch = 0;
-        int rows = 0;
-        long actual_bytes = 0;
+            if(isNull) {
+                chunk.array()[bitmap + (i >> 3)] |= (byte) (1 << (i & 7));
+                stats.addNull(i);
+            }
+        }
+    }
 
-        ByteArrayOutputStream bytesChunk = new ByteArrayOutputStream();
-        DataFile chunk = new DataFile(new DataOutputStream(bytesChunk));
+    /**
+     * 将结果集的当前行写入列式数据块，同时更新列统计信息，字符串、日期和时间的编码与行式数据块相同
+     * @return 写入的字节数
+     */
+    static int writeRow(ResultSet rs, FieldType[] fieldTypes, ColumnChunk chunk, ChunkStats stats,
+                        LobFile lobs, boolean[] clobFields, int[] scales, StringDictionary dict,
+                        DeltaOfDelta deltas) throws SQLException, IOException {
+        int bytes = 0;
+        chunk.addRow();
 
-        while (rs.next()) {
-            chunk.writeByte((byte) StartFlag.DataRow.ordinal());
+        for(int i=0; i<fieldTypes.length; i++) {
+            ChunkBuffer values = chunk.getValues(i);
+            int start = values.size();
+            switch (fieldTypes[i]) {
+                case Null:
+                    stats.addNull(i);
+                    break;
+                case Integer:
+                    int iVal = rs.getInt(i + 1);
+                    if(rs.wasNull()) {
+                        chunk.setNull(i);
+                        stats.addNull(i);
+                    }
+                    else {
+                        values.writeInteger(iVal);
+                        stats.add(i, iVal);
+                    }
+                    break;
+                case Long:
+                    long lVal = rs.getLong(i + 1);
+                    if(rs.wasNull()) {
+                        chunk.setNull(i);
+                        stats.addNull(i);
+                    }
+                    else {
+                        values.writeLong(lVal);
+                        stats.add(i, lVal);
+                    }
+                    break;
+                case Double:
+                    double fVal = rs.getDouble(i + 1);
+                    if(rs.wasNull()) {
+                        chunk.setNull(i);
+                        stats.addNull(i);
+                    }
+                    else {
+                        values.writeDouble(fVal);
+                        stats.add(i, fVal);
+                    }
+                    break;
+                case Decimal:
+                    BigDecimal nVal = rs.getBigDecimal(i + 1);
+                    if(nVal == null) {
+                        chunk.setNull(i);
+                        stats.addNull(i);
+                    }
+                    else {
+                        values.writeDecimal(nVal, scales[i]);
+                        stats.add(i, nVal);
+                    }
+                    break;
+                case String:
+                    Object text = clobFields != null && clobFields[i] ? readText(rs, i + 1, lobs) : rs.getString(i + 1);
+                    String sVal = text instanceof String ? (String) text : null;
+                    if(text instanceof long[]) {
+                        writeLobRef(values, (long[]) text, true);
+                        stats.addValue(i);
+                    }
+                    //与行存储相同，空字符串按null存储
+                    else if(sVal == null || sVal.isEmpty()) {
+                        chunk.setNull(i);
+                        stats.addNull(i);
+                    }
+                    else {
+                        dict.write(values, i, sVal);
+                        stats.add(i, sVal);
+                    }
+                    break;
+                case Date:
+                case DateTime:
+                case DateTimeTZ:
+                    Long temporal = writeTemporal(rs, i, fieldTypes[i], values, deltas);
+                    if(temporal == null) {
+                        chunk.setNull(i);
+                        stats.addNull(i);
+                    }
+                    else
+                        stats.add(i, temporal);
+                    break;
+                case Binary:
+                    //与行存储相同，长度为0的值按null存储
+                    if(writeBinary(values, rs.getBinaryStream(i + 1), lobs, false))
+                        stats.addValue(i);
+                    else {
+                        chunk.setNull(i);
+                        stats.addNull(i);
+                    }
+                    break;
+                default:
+                    assert false;
+            }
+            bytes += values.size() - start;
+        }
+        return bytes;
+    }
 
-            for(int i=0; i<fieldTypes.length; i++) {
-                switch (fieldTypes[i]) {
-                    case Null:
-                        break;
-                    case Integer:
-                        int iVal = rs.getInt(i + 1);
-                        if(rs.wasNull())
-                            chunk.writeByte((byte) 1);
-                        else {
-                            chunk.writeByte((byte) 0);
-                            chunk.writeInteger(iVal);
-                        }
-                        break;
-                    case Long:
-                        long lVal = rs.getLong(i + 1);
-                        if(rs.wasNull())
-                            chunk.writeByte((byte) 1);
-                        else {
-                            chunk.writeByte((byte) 0);
-                            chunk.writeLong(lVal);
-                        }
-                        break;
-                    case Double:
-                        double fVal = rs.getDouble(i + 1);
-                        if(rs.wasNull())
-                            chunk.writeByte((byte) 1);
-                        else {
-                            chunk.writeByte((byte) 0);
-                            chunk.writeDouble(fVal);
-                        }
-                        break;
-                    case String:
-                        chunk.writeString(rs.getString(i + 1));
-                        break;
-                    case Date:
-                        chunk.writeDate(rs.getTimestamp(i + 1));
-                        break;
-                    case DateTime:
-                        chunk.writeDateTime(rs.getTimestamp(i + 1));
-                        break;
-                    case Binary:
-                        chunk.writeBinary(rs.getBlob(i + 1));
-                        break;
-                    default:
-                        assert false;
-                }
+    /**
+     * 写入日期或时间列的值：日期为按delta-of-delta编码的天数（zigzag varint），按日历日期存储，不受时区影响；
+     * 时间见ChunkBuffer.writeTimestamp，精确到纳秒；带时区的时间之后为varint(zigzag(时区偏移的秒数))
+     * @param column 列序号，从0开始
+     * @return 用于统计信息的值：日期为天数（epoch day），与时区无关；时间为毫秒数。值为null时返回null
+     */
+    private static Long writeTemporal(ResultSet rs, int column, FieldType fieldType, ChunkBuffer buf, DeltaOfDelta deltas) throws SQLException {
+        switch (fieldType) {
+            case Date:
+                LocalDate date = readDate(rs, column + 1);
+                if(date == null)
+                    return null;
+                buf.writeVarLong(ChunkBuffer.zigzag(deltas.encode(column, date.toEpochDay())));
+                return date.toEpochDay();
+            case DateTime:
+                Timestamp tVal = rs.getTimestamp(column + 1);
+                if(tVal == null)
+                    return null;
+                buf.writeTimestamp(Math.floorDiv(tVal.getTime(), 1000) * 1000000 + tVal.getNanos() / 1000, tVal.getNanos() % 1000, deltas, column);
+                return tVal.getTime();
+            default:
+                OffsetDateTime zVal = rs.getObject(column + 1, OffsetDateTime.class);
+                if(zVal == null)
+                    return null;
+                buf.writeTimestamp(zVal.toEpochSecond() * 1000000 + zVal.getNano() / 1000, zVal.getNano() % 1000, deltas, column);
+                buf.writeVarLong(ChunkBuffer.zigzag(zVal.getOffset().getTotalSeconds()));
+                return zVal.toInstant().toEpochMilli();
+        }
+    }
 
-            }
+    /**
+     * 读取日期列的日历日期，丢弃时间部分
+     * @param column 列序号，从1开始
+     * @return 值为null时返回null
+     */
+    static LocalDate readDate(ResultSet rs, int column) throws SQLException {
+        Timestamp value = rs.getTimestamp(column);
+        return value == null ? null : value.toLocalDateTime().toLocalDate();
+    }
 
-            batch += 1;
-            rows += 1;
+    /**
+     * @return 定点数列的小数位数，未指定小数位数（eg.Oracle的NUMBER为-127，PostgreSQL的numeric没有精度）时为ChunkBuffer.UNKNOWN_SCALE，其他列为0
+     */
+    private static int[] getScales(ResultSetMetaData md, FieldType[] fieldTypes) throws SQLException {
+        int[] scales = new int[fieldTypes.length];
+        for(int i=0; i<scales.length; i++) {
+            if(fieldTypes[i] != FieldType.Decimal)
+                continue;
+            int scale = md.getScale(i + 1);
+            if(scale > 0 && scale <= Byte.MAX_VALUE)
+                scales[i] = scale;
+            else if(scale != 0 || md.getPrecision(i + 1) <= 0)
+                scales[i] = ChunkBuffer.UNKNOWN_SCALE;
+        }
+        return scales;
+    }
 
-            if(batch >= 1000 || bytesChunk.size() >= 4 * 1024 * 1024) {
-                chunk.writeByte((byte) StartFlag.EOF.ordinal());
-                actual_bytes += bytesChunk.size();
-                file.writeByte((byte) StartFlag.DataRow.ordinal());
-                file.writeCompressBinary(bytesChunk.toByteArray());
+    /**
+     * @return 需要按流读取的CLOB、NCLOB和长文本列
+     */
+    static boolean[] getClobFields(ResultSetMetaData md) throws SQLException {
+        boolean[] fields = new boolean[md.getColumnCount()];
+        for(int i=0; i<fields.length; i++) {
+            int type = md.getColumnType(i + 1);
+            fields[i] = type == Types.CLOB || type == Types.NCLOB || type == Types.LONGVARCHAR || type == Types.LONGNVARCHAR;
+        }
+        return fields;
+    }
 
-                batch = 0;
-                bytesChunk.reset();
-            }
+    /**
+     * 按流读取文本列，不超过阈值时返回字符串，否则写入旁路文件
+     * @return String，或者旁路文件中的位置和长度
+     */
+    static Object readText(ResultSet rs, int column, LobFile lobs) throws SQLException, IOException {
+        Reader reader = rs.getCharacterStream(column);
+        if(reader == null)
+            return null;
 
-            if((rows % argFeedback) == 0) {
-                printMsg(LogLevel.INFO, String.format("%d rows ...", rows));
+        try {
+            StringBuilder sb = new StringBuilder();
+            char[] buf = new char[8192];
+            int n;
+            while ((n = reader.read(buf)) != -1) {
+                sb.append(buf, 0, n);
+                if(lobs != null && sb.length() > lobs.getThreshold())
+                    return lobs.append(sb.toString(), reader);
             }
-            if(rows >= argLimit)
-                break;
+            return sb.toString();
+        } finally {
+            reader.close();
         }
+    }
 
-        if(batch > 0) {
-            chunk.writeByte((byte) StartFlag.EOF.ordinal());
-            actual_bytes += bytesChunk.size();
-            file.writeByte((byte) StartFlag.DataRow.ordinal());
-            file.writeCompressBinary(bytesChunk.toByteArray());
+    /**
+     * 按流读取二进制列，不超过阈值时返回字节数组，否则写入旁路文件
+     * @return byte[]，或者旁路文件中的位置和长度
+     */
+    static Object readBinary(ResultSet rs, int column, LobFile lobs) throws SQLException, IOException {
+        InputStream is = rs.getBinaryStream(column);
+        if(is == null)
+            return null;
+
+        try {
+            ByteArrayOutputStream head = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = is.read(buf)) != -1) {
+                head.write(buf, 0, n);
+                if(lobs != null && head.size() > lobs.getThreshold())
+                    return lobs.append(head.toByteArray(), 0, head.size(), is);
+            }
+            return head.toByteArray();
+        } finally {
+            is.close();
         }
+    }
 
-        file.writeByte((byte) StartFlag.EOF.ordinal());
-        file.seek(rows_offset);
-        file.writeInteger(rows);
-        file.writeLong(actual_bytes);
-        file.close();
+    /**
+     * 按流读取二进制列，超过阈值时写入旁路文件，数据块中写入引用
+     * @param varLength 是否按行编码v2写入varint长度，否则为4字节长度
+     * @return 是否写入了值，流为null或长度为0时不写入，返回false，由调用者按空值处理
+     */
+    private static boolean writeBinary(ChunkBuffer buf, InputStream is, LobFile lobs, boolean varLength) throws IOException {
+        if(is == null)
+            return false;
 
-        printMsg(LogLevel.INFO, String.format("Total: %d rows", rows));
-        DecimalFormat df = new DecimalFormat("#,###");
-        printMsg(LogLevel.INFO, String.format("Total original size: %s bytes", df.format(actual_bytes)));
+        try {
+            int start = buf.size();
+            int limit = lobs == null ? Integer.MAX_VALUE - 8 : lobs.getThreshold();
+            if(varLength ? buf.writeVarBinary(is, limit) : buf.writeBinary(is, limit)) {
+                if(buf.size() - start == (varLength ? 1 : 4)) {
+                    buf.setSize(start);
+                    return false;
+                }
+                return true;
+            }
+            if(lobs == null)
+                throw new IOException("Binary value is too large");
 
-        this.setResultInfo("rows", rows);
-        this.setResultInfo("size", actual_bytes);
+            int head = start + (varLength ? ChunkBuffer.VAR_LENGTH_RESERVED : 4);
+            long[] ref = lobs.append(buf.array(), head, buf.size() - head, is);
+            buf.setSize(start);
+            writeLobRef(buf, ref, varLength);
+            return true;
+        } finally {
+            is.close();
+        }
+    }
 
-        rs.close();
-        stmt.close();
+    /**
+     * 写入大对象引用：长度-1、在旁路文件中的位置和长度；行编码v2为varint 0、位置和长度
+     */
+    private static void writeLobRef(ChunkBuffer buf, long[] ref, boolean varLength) {
+        if(varLength) {
+            buf.writeVarLong(0);
+            buf.writeVarLong(ref[0]);
+            buf.writeVarLong(ref[1]);
+            return;
+        }
+        buf.writeInteger(LobFile.REF);
+        buf.writeLong(ref[0]);
+        buf.writeLong(ref[1]);
+    }
+
+    /**
+     * 结束当前数据块，提交给写入流水线压缩和写入，之后数据块由流水线回收
+     * @return 数据块的原始大小
+     */
+    private static long flushChunk(ChunkWriter writer, ChunkBuffer chunk, int rows, ChunkStats stats, Checkpoint checkpoint) throws IOException {
+        chunk.writeByte((byte) StartFlag.EOF.ordinal());
+        long size = chunk.size();
+        writer.write(chunk, rows, stats, checkpoint);
+        return size;
+    }
+
+    /**
+     * 提交列式数据块，之后数据块由流水线回收
+     * @return 数据块的原始大小
+     */
+    private static long flushChunk(ChunkWriter writer, ColumnChunk chunk, ChunkStats stats, Checkpoint checkpoint) throws IOException {
+        long size = chunk.size();
+        writer.write(chunk, stats, checkpoint);
+        return size;
     }
 }
@@ -0,0 +1,132 @@
+package org.yuyun.dbtool.processor;
+
+import org.yuyun.dbtool.DBType;
+import org.yuyun.dbtool.LogLevel;
+import org.yuyun.dbtool.db.RelationalDB;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+public class ExportSchemaProcessor extends SchemaProcessor {
+    private String argTables;
+    private String argPattern;
+    private String argSchema;
+    private String argOutputDir;
+    private String argManifest;
+    private int argThreads;
+    private Map<String, String> exportArgs;
+
+    @Override
+    public String getActionName() {
+        return "export_schema";
+    }
+
+    @Override
+    protected boolean isConnectionUsed() {
+        return true;
+    }
+
+    /**
+     * export_schema
+     *     --tables S   <可选>逗号分隔的表名列表
+     *     --pattern S  <可选>未设置tables时，按表名模式（LIKE语法，eg."T_ORDER%"）查找表，默认为所有表
+     *     --schema S   <可选>按模式查找表时的模式名，默认为当前模式
+     *     --output S   目标目录，每个表导出为"表名.dat"
+     *     --manifest S <可选>清单文件路径，记录各表的数据文件、行数和耗时，默认为目标目录下的manifest.json
+     *     --threads N  <可选>同时导出的表数，每个线程使用独立的数据库连接，默认为4
+     *     --feedback、--compress-threads、--fetch-size、--fetch-memory、--codec、--layout、--lob-threshold、--dict-size、
+     *     --chunk-rows、--chunk-bytes
+     *                  <可选>传递给每个表的export
+     */
+    @Override
+    protected void parseArguments(Map<String, String> args) {
+        this.argTables = checkOptionalArgumentString(args, "tables", "");
+        this.argPattern = checkOptionalArgumentString(args, "pattern", "%");
+        this.argSchema = checkOptionalArgumentString(args, "schema", "");
+        this.argOutputDir = checkMandatoryArgumentString(args, "output");
+        this.argManifest = checkOptionalArgumentString(args, "manifest", new File(argOutputDir, "manifest.json").getPath());
+        this.argThreads = checkOptionalArgumentInt(args, "threads", 4);
+        this.exportArgs = copyArguments(args, "feedback", "compress-threads", "fetch-size", "fetch-memory", "codec", "layout", "lob-threshold", "dict-size", "chunk-rows", "chunk-bytes");
+
+        if(argThreads < 1)
+            throw new RuntimeException(String.format("The parameter threads is not a valid integer: %d", argThreads));
+    }
+
+    @Override
+    protected void process() throws Exception {
+        File dir = new File(argOutputDir);
+        if(!dir.isDirectory() && !dir.mkdirs())
+            throw new RuntimeException(String.format("Can't create directory: %s", argOutputDir));
+
+        //查找表并按数据字典估算大小
+        RelationalDB db = getRelationalDB();
+        List<TableTask> tasks = new ArrayList<>();
+        for(String table : listTables()) {
+            TableTask task = new TableTask();
+            task.table = table;
+            task.file = table + ".dat";
+            task.estimate = db.getTableSize(getConnection(), table);
+            tasks.add(task);
+        }
+        if(tasks.isEmpty())
+            throw new RuntimeException("No table found");
+
+        Manifest manifest = new Manifest();
+        manifest.start = now();
+        manifest.tables = tasks;
+        int failed = processTables(tasks, argThreads);
+        manifest.end = now();
+        writeManifest(new File(argManifest), manifest);
+        printMsg(LogLevel.INFO, String.format("Manifest: %s", argManifest));
+
+        setTableResults(tasks);
+        if(failed > 0)
+            throw new RuntimeException(String.format("%d of %d tables failed", failed, tasks.size()));
+    }
+
+    @Override
+    protected void processTable(TableTask task, Connection conn) throws Exception {
+        Map<String, String> args = new HashMap<>(exportArgs);
+        args.put("table", task.table);
+        args.put("output", new File(argOutputDir, task.file).getPath());
+
+        Map<String, Object> result = runProcessor(new ExportProcessor(), args, conn);
+        task.rows = ((Number) result.get("rows")).intValue();
+        task.size = ((Number) result.get("size")).longValue();
+    }
+
+    private List<String> listTables() throws SQLException {
+        List<String> tables = new ArrayList<>();
+        if(!argTables.isEmpty()) {
+            for(String s : argTables.split(",")) {
+                if(!s.trim().isEmpty())
+                    tables.add(s.trim());
+            }
+            return tables;
+        }
+
+        String schema = argSchema;
+        if(schema.isEmpty()) {
+            try {
+                schema = getConnection().getSchema();
+            } catch (SQLException | AbstractMethodError e) {
+                schema = null;
+            }
+        }
+
+        DatabaseMetaData meta = getConnection().getMetaData();
+        try (ResultSet rs = meta.getTables(getConnection().getCatalog(), schema, argPattern, new String[] {"TABLE"})) {
+            while (rs.next()) {
+                String name = rs.getString("TABLE_NAME");
+                if(getDbType().equals(DBType.SQLite) && name.startsWith("sqlite_"))
+                    continue;
+                tables.add(argSchema.isEmpty() ? name : argSchema + "." + name);
+            }
+        }
+        return tables;
+    }
+}
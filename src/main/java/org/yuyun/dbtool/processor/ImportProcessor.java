@@ -1,21 +1,30 @@
 package org.yuyun.dbtool.processor;
 
 import org.yuyun.dbtool.DBType;
-import org.yuyun.dbtool.DataFileProcessor;
 import org.yuyun.dbtool.FieldType;
 import org.yuyun.dbtool.LogLevel;
+import org.yuyun.dbtool.Metrics;
+import org.yuyun.dbtool.RowBatch;
+import org.yuyun.dbtool.RowBatchProcessor;
 
+import java.io.IOException;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-public class ImportProcessor extends Processor implements DataFileProcessor {
+public class ImportProcessor extends Processor implements RowBatchProcessor {
     class FieldMapItem {
         String  targetFieldName;
         String  expression;
     }
 
+    private static final RowBatch END = new RowBatch(new FieldType[0]);
+    private static final String COPY_TABLE = "dbtool_import";
+
     private String argTableName;
     private int argLimit;
     private int argFeedback;
@@ -23,12 +32,30 @@ public class ImportProcessor extends Processor implements DataFileProcessor {
     private String argInputFile;
     private int argStart;
     private String argUpset;
+    private String argFilter;
     private Map<String, FieldMapItem> argFieldMap;
+    private int argThreads = 1;
+    private boolean argCopy = false;
 
     private PreparedStatement ps;
     private int batch;
+    private long batchStart = 0;
     private FieldType[] fieldTypes;
+    private final Metrics metrics = new Metrics("read", "inflate", "wait", "decode", "bind", "executeBatch", "commit");
     private Map<Integer, Integer> bindPosMap;
+    private ParameterBinder[] binders;
+    private String sql;
+    private String copySql;     //PostgreSQL使用COPY导入时的COPY语句，不使用时为null
+    private String copyTableSql;    //upset时创建临时表的语句
+    private String copyMergeSql;    //upset时从临时表插入或更新目标表的语句
+    private int[] copyColumns;
+    private PgBinaryCopy.Encoder[] copyEncoders;
+    private PgBinaryCopy copy;
+    private BlockingQueue<RowBatch> queue;
+    private RowBatch pending;   //并行写入时等待放入队列的行
+    private RowBatch single;    //onRow逐行写入时使用
+    private final List<Worker> workers = new ArrayList<>();
+    private volatile Throwable error = null;
 
     @Override
     public String getActionName() {
@@ -54,15 +81,32 @@ public class ImportProcessor extends Processor implements DataFileProcessor {
      *     --input S    要导入的数据文件路径
      *     --start N    <可选> 从第N行开始导入，默认为1
      *     --upset S    <可选> 根据唯一约束进行更新，需设置约束字段
+     *     --filter S   <可选> 只导入满足条件的行，eg."id between 1000 and 2000 and created >= '2023-01-01'"
+     *     --threads N  <可选> 并行写入的线程数，每个线程使用独立的数据库连接并各自提交，行的顺序可能与数据文件不同，默认为1
+     *     --copy B     <可选> PostgreSQL使用二进制COPY导入，每批一次COPY并提交；upset时先COPY到临时表再插入或更新目标表。
+     *                      --fields含有表达式或目标列的类型不支持时使用INSERT，默认为false
      */
     @Override
     protected void parseArguments(Map<String, String> args) {
-        this.argTableName = checkMandatoryArgumentString(args, "table");
         this.argLimit = checkOptionalArgumentInt(args, "limit", Integer.MAX_VALUE);
         this.argFeedback = checkOptionalArgumentInt(args, "feedback", 10000);
-        this.argBatch = checkOptionalArgumentInt(args, "batch", 10000);
         this.argInputFile = checkMandatoryArgumentString(args, "input");
         this.argStart = checkOptionalArgumentInt(args, "start", 1);
+        this.argFilter = checkOptionalArgumentString(args, "filter", null);
+        this.argThreads = checkOptionalArgumentInt(args, "threads", 1);
+        this.argCopy = checkOptionalArgumentBool(args, "copy", false);
+        parseTargetArguments(args);
+
+        if(argThreads < 1)
+            throw new RuntimeException(String.format("The parameter threads is not a valid integer: %d", argThreads));
+    }
+
+    /**
+     * 解析目标表相关的参数：table、fields、batch、upset，copy命令直接使用onSummary/onRow/onRowEnd写入目标表
+     */
+    void parseTargetArguments(Map<String, String> args) {
+        this.argTableName = checkMandatoryArgumentString(args, "table");
+        this.argBatch = checkOptionalArgumentInt(args, "batch", 10000);
         this.argUpset = checkOptionalArgumentString(args, "upset", null);
         this.argFieldMap = new HashMap<>();
         String as = checkOptionalArgumentString(args, "fields", null);
@@ -105,7 +149,12 @@ public class ImportProcessor extends Processor implements DataFileProcessor {
 
     @Override
     protected void process() throws Exception {
-        processDataFile(this.argInputFile, this, argFeedback);
+        try {
+            processDataFile(this.argInputFile, this, argFeedback, argFilter, metrics);
+        } finally {
+            stopWorkers();
+        }
+        this.setResultInfo("metrics", metrics.toMap());
     }
 
     private static List<String> parseExpression(String exp) {
@@ -132,6 +181,7 @@ public class ImportProcessor extends Processor implements DataFileProcessor {
         Map<Integer, Integer> fieldPosMap = new HashMap<>(); // 数据文件字段位置序号 => 最终导入表的字段名序号（targetFieldNames中的位置）
         Map<String, String> targetFieldsMap = new HashMap<>(); // 目标数据表字段名（小写）=> 目标数据表字段名
         Map<String, Integer> sourceFieldsMap = new HashMap<>(); // 数据文件字段名（小写）=> 数据文件字段位置序号
+        Map<String, String> targetTypesMap = new HashMap<>(); // 目标数据表字段名（小写）=> 字段类型名称
         List<String> targetFieldsList = new ArrayList<>(); // 目标数据表字段名（小写）
 
         //源表字段
@@ -146,6 +196,7 @@ public class ImportProcessor extends Processor implements DataFileProcessor {
             String s = meta.getColumnName(i + 1);
             targetFieldsMap.put(s.toLowerCase(), s);
             targetFieldsList.add(s.toLowerCase());
+            targetTypesMap.put(s.toLowerCase(), meta.getColumnTypeName(i + 1));
         }
         rs.close();
         stmt.close();
@@ -189,6 +240,9 @@ public class ImportProcessor extends Processor implements DataFileProcessor {
 
         this.bindPosMap = new HashMap<>();
         StringBuilder sb = new StringBuilder();
+        StringBuilder columns = new StringBuilder();
+        StringBuilder conflict = new StringBuilder();
+        boolean expression = false;
 
         if(argUpset == null || argUpset.isEmpty() || this.getDbType().equals(DBType.PostgreSQL)) {
             sb.append("INSERT INTO ").append(argTableName).append("(");
@@ -203,6 +257,7 @@ public class ImportProcessor extends Processor implements DataFileProcessor {
                 if (this.getDbType().equals(DBType.MySQL))
                     sb.append("`");
             }
+            columns.append(sb, sb.indexOf("(") + 1, sb.length());
             sb.append(")\nVALUES(");
 
             index = 0;
@@ -215,6 +270,7 @@ public class ImportProcessor extends Processor implements DataFileProcessor {
                     sb.append("?");
                     this.bindPosMap.put(index, entry.getKey());
                 } else {
+                    expression = true;
                     if (index > 0)
                         sb.append(",");
                     List<String> list = parseExpression(exp);
@@ -238,17 +294,18 @@ public class ImportProcessor extends Processor implements DataFileProcessor {
             }
 
             if(this.getDbType().equals(DBType.PostgreSQL)) {
-                sb.append("\nON CONFLICT(").append(argUpset).append(") DO UPDATE SET ");
+                conflict.append("\nON CONFLICT(").append(argUpset).append(") DO UPDATE SET ");
                 int index = 0;
                 for(Map.Entry<Integer, Integer> entry : fieldPosMap.entrySet()) {
                     if(upsetFields.contains(targetFieldNames.get(entry.getValue()).toLowerCase()))
                         continue;
 
                     if(index > 0)
-                        sb.append(",");
+                        conflict.append(",");
                     index += 1;
-                    sb.append(String.format("%s=EXCLUDED.%s", targetFieldNames.get(entry.getValue()), targetFieldNames.get(entry.getValue())));
+                    conflict.append(String.format("%s=EXCLUDED.%s", targetFieldNames.get(entry.getValue()), targetFieldNames.get(entry.getValue())));
                 }
+                sb.append(conflict);
             }
             else if(this.getDbType().equals(DBType.Oracle)) {
                 sb.append(String.format("merge into %s dest", argTableName));
@@ -314,14 +371,92 @@ public class ImportProcessor extends Processor implements DataFileProcessor {
         }
 
         //准备更新
-        String sql = sb.toString();
-        printMsg(LogLevel.INFO, String.format("SQL: %s", sql));
-        this.ps = this.getConnection().prepareStatement(sql);
-        this.getConnection().setAutoCommit(false);
+        this.sql = sb.toString();
+        if(argCopy && this.getDbType().equals(DBType.PostgreSQL))
+            prepareCopy(names, expression, columns.toString(), conflict.toString(), targetTypesMap);
+        printMsg(LogLevel.INFO, String.format("SQL: %s", copySql != null ? copySql : sql));
+        if(argThreads > 1)
+            startWorkers();
+        else if(copySql != null) {
+            this.getConnection().setAutoCommit(false);
+            this.copy = openCopy(this.getConnection());
+        }
+        else {
+            this.ps = this.getConnection().prepareStatement(sql);
+            this.getConnection().setAutoCommit(false);
+            this.binders = createBinders();
+        }
         this.batch = 0;
         printMsg(LogLevel.INFO, "Start ...");
     }
 
+    /**
+     * PostgreSQL使用二进制COPY导入：按绑定位置为各列创建编码器，--fields含有表达式或有不支持的类型组合时仍使用INSERT
+     * @param columns 目标表的字段列表，与绑定位置的顺序相同
+     * @param conflict upset时的ON CONFLICT子句
+     */
+    private void prepareCopy(String[] names, boolean expression, String columns, String conflict, Map<String, String> targetTypesMap) {
+        if(expression) {
+            printMsg(LogLevel.INFO, "COPY not used: fields contain expressions");
+            return;
+        }
+
+        String[] targetNames = columns.split(",");
+        int[] copyColumns = new int[bindPosMap.size()];
+        PgBinaryCopy.Encoder[] copyEncoders = new PgBinaryCopy.Encoder[bindPosMap.size()];
+        int k = 0;
+        for(Map.Entry<Integer, Integer> entry : bindPosMap.entrySet()) {
+            int column = entry.getValue();
+            String targetType = targetTypesMap.get(targetNames[k].toLowerCase());
+            copyEncoders[k] = PgBinaryCopy.encoder(fieldTypes[column], column, targetType);
+            if(copyEncoders[k] == null) {
+                printMsg(LogLevel.INFO, String.format("COPY not used: field %s (%s) to column %s (%s) not supported",
+                        names[column], fieldTypes[column].name(), targetNames[k], targetType));
+                return;
+            }
+            copyColumns[k++] = column;
+        }
+
+        this.copyColumns = copyColumns;
+        this.copyEncoders = copyEncoders;
+        if(argUpset != null && !argUpset.isEmpty()) {
+            //同一批中约束字段重复时只保留最后一行，ON CONFLICT不能在一个语句中更新同一行两次
+            this.copyTableSql = String.format("CREATE TEMP TABLE %s ON COMMIT DELETE ROWS AS SELECT %s FROM %s WITH NO DATA", COPY_TABLE, columns, argTableName);
+            this.copyMergeSql = String.format("INSERT INTO %s(%s) SELECT DISTINCT ON (%s) %s FROM %s ORDER BY %s, ctid DESC%s",
+                    argTableName, columns, argUpset, columns, COPY_TABLE, argUpset, conflict);
+            this.copySql = String.format("COPY %s(%s) FROM STDIN (FORMAT BINARY)", COPY_TABLE, columns);
+            printMsg(LogLevel.INFO, String.format("SQL: %s", copyMergeSql));
+        }
+        else
+            this.copySql = String.format("COPY %s(%s) FROM STDIN (FORMAT BINARY)", argTableName, columns);
+    }
+
+    /**
+     * 为连接创建COPY写入器，upset时先创建临时表
+     */
+    private PgBinaryCopy openCopy(Connection conn) throws SQLException {
+        if(copyTableSql != null) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(String.format("DROP TABLE IF EXISTS pg_temp.%s", COPY_TABLE));
+                stmt.execute(copyTableSql);
+            }
+            conn.commit();
+        }
+        return new PgBinaryCopy(conn, copySql, copyColumns, copyEncoders);
+    }
+
+    /**
+     * 结束当前批的COPY，upset时从临时表插入或更新目标表
+     */
+    private void endCopy(Connection conn, PgBinaryCopy copy) throws SQLException {
+        copy.end();
+        if(copyMergeSql != null) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate(copyMergeSql);
+            }
+        }
+    }
+
     @Override
     public boolean onSummary(String ddl, int fields, String[] names, FieldType[] fieldTypes, String[] fieldTypeNames, int totalRows, long actualBytes) {
         try {
@@ -335,80 +470,113 @@ public class ImportProcessor extends Processor implements DataFileProcessor {
         return true;
     }
 
+    @Override
+    public int onBatch(RowBatch rowBatch) {
+        //只处理到起始行之后的第limit行
+        int n = (int) Math.max(0, Math.min(rowBatch.size(), (long) argStart + argLimit - rowBatch.getFirstRow()));
+        for(int r=0; r<n; r++)
+            writeRow(rowBatch, r, rowBatch.getFirstRow() + r);
+        return n;
+    }
+
+    /**
+     * 逐行写入，copy命令使用
+     */
     @Override
     public boolean onRow(int row, Object[] fields) {
+        if(single == null)
+            single = new RowBatch(fieldTypes);
+        single.reset(1);
+        single.setSize(1);
+        single.setRow(0, fields);
+        writeRow(single, 0, row);
+
+        return row < this.argStart + this.argLimit - 1;
+    }
+
+    private void writeRow(RowBatch rowBatch, int r, int row) {
+        if(queue != null) {
+            //并行写入时只复制解码后的行，由工作线程绑定和执行
+            if(pending == null) {
+                pending = new RowBatch(fieldTypes);
+                pending.reset(argBatch);
+            }
+            pending.append(rowBatch, r);
+            if(pending.size() >= argBatch) {
+                offerRows(pending);
+                pending = null;
+            }
+            return;
+        }
+
+        long tick = System.nanoTime();
+        if(batch == 0 && batchStart == 0)
+            batchStart = tick;
         batch += 1;
 
         try {
-            for(Map.Entry<Integer, Integer> entry : this.bindPosMap.entrySet()) {
-                int pos = entry.getKey();
-                int i = entry.getValue();
-
-                switch (fieldTypes[i]) {
-                    case Integer:
-                        if (fields[i] == null)
-                            ps.setNull(pos, Types.INTEGER);
-                        else
-                            ps.setInt(pos, ((Number) fields[i]).intValue());
-                        break;
-                    case Long:
-                        if (fields[i] == null)
-                            ps.setNull(pos, Types.BIGINT);
-                        else
-                            ps.setLong(pos, ((Number) fields[i]).longValue());
-                        break;
-                    case Double:
-                        if (fields[i] == null)
-                            ps.setNull(pos, Types.DECIMAL);
-                        else
-                            ps.setDouble(pos, ((Number) fields[i]).doubleValue());
-                        break;
-                    case String:
-                        ps.setString(pos, (String) fields[i]);
-                        break;
-                    case Date:
-                        ps.setDate(pos, fields[i] != null ? new java.sql.Date(((java.util.Date) fields[i]).getTime()) : null);
-                        break;
-                    case DateTime:
-                        ps.setTimestamp(pos, fields[i] != null ? new java.sql.Timestamp(((java.util.Date) fields[i]).getTime()) : null);
-                        break;
-                    case Binary:
-                        if (fields[i] == null)
-                            ps.setNull(pos, Types.VARBINARY);
-                        else {
-                            Blob blob = this.getConnection().createBlob();
-                            blob.setBytes(1, (byte[]) fields[i]);
-                            ps.setBlob(pos, blob);
-                        }
-                        break;
-                    case Null:
-                        ps.setNull(pos, Types.NULL);
-                        break;
-                }
+            if(copy != null) {
+                if(!copy.isActive())
+                    copy.begin();
+                copy.writeRow(rowBatch, r);
+                metrics.add("bind", System.nanoTime() - tick);
+                if(batch >= argBatch)
+                    executeBatch();
+                return;
             }
 
+            boolean lob = bindRow(ps, binders, rowBatch, r);
             ps.addBatch();
-            if(batch >= argBatch) {
-                ps.executeBatch();
-                this.getConnection().commit();
-                batch = 0;
-            }
-        } catch (SQLException e) {
+            metrics.add("bind", System.nanoTime() - tick);
+            //大对象以流的方式绑定，立即执行，避免驱动缓存整批数据
+            if(batch >= argBatch || lob)
+                executeBatch();
+        } catch (SQLException | IOException e) {
+            if(copy != null)
+                copy.cancel();
             printMsg(LogLevel.ERROR, String.format("Import failed at row #%d", row));
             printMsg(e);
             throw new RuntimeException(e);
         }
+    }
 
-        return row < this.argStart + this.argLimit - 1;
+    /**
+     * 按绑定位置和列类型创建参数绑定器，每个语句使用各自的一组
+     */
+    private ParameterBinder[] createBinders() {
+        ParameterBinder[] result = new ParameterBinder[bindPosMap.size()];
+        int k = 0;
+        for(Map.Entry<Integer, Integer> entry : bindPosMap.entrySet())
+            result[k++] = ParameterBinder.create(fieldTypes[entry.getValue()], entry.getKey(), entry.getValue(), getRelationalDB());
+        return result;
+    }
+
+    /**
+     * 设置一行的参数
+     * @return 是否绑定了大对象
+     */
+    private static boolean bindRow(PreparedStatement ps, ParameterBinder[] binders, RowBatch rowBatch, int r) throws SQLException, IOException {
+        boolean lob = false;
+        for(ParameterBinder binder : binders)
+            lob |= binder.bind(ps, rowBatch, r);
+        return lob;
     }
 
     @Override
     public void onRowEnd(int rows) {
+        if(queue != null) {
+            if(pending != null)
+                offerRows(pending);
+            pending = null;
+            finishWorkers();
+            printMsg(LogLevel.INFO, String.format("Total: %d rows", rows));
+            this.setResultInfo("rows", rows);
+            return;
+        }
+
         try {
-            if(batch > 0) {
-                ps.executeBatch();
-                getConnection().commit();
-            }
+            if(batch > 0)
+                executeBatch();
             getConnection().setAutoCommit(true);
             printMsg(LogLevel.INFO, String.format("Total: %d rows", rows));
 
@@ -420,8 +588,195 @@ public class ImportProcessor extends Processor implements DataFileProcessor {
         }
     }
 
+    /**
+     * 执行并提交当前批，累计executeBatch和commit阶段的耗时
+     */
+    private void executeBatch() throws SQLException {
+        long tick = System.nanoTime();
+        if(copy != null)
+            endCopy(this.getConnection(), copy);
+        else
+            ps.executeBatch();
+        long now = System.nanoTime();
+        metrics.add("executeBatch", now - tick);
+        this.getConnection().commit();
+        tick = System.nanoTime();
+        metrics.add("commit", tick - now);
+
+        //从该批第一行开始绑定到提交完成，包括读取和解码的时间
+        metrics.addBatch(batch, tick - batchStart);
+        batchStart = tick;
+        batch = 0;
+    }
+
+    private void startWorkers() {
+        this.queue = new ArrayBlockingQueue<>(argThreads * 2);
+        for(int i=0; i<argThreads; i++) {
+            Worker worker = new Worker(i + 1);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+        printMsg(LogLevel.INFO, String.format("Workers: %d", argThreads));
+    }
+
+    /**
+     * 将一批行放入队列，队列已满时等待，等待期间检查工作线程是否失败
+     */
+    private void offerRows(RowBatch batch) {
+        try {
+            while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                if(error != null)
+                    break;
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        if(error != null)
+            throw new RuntimeException(String.format("Import failed: %s", error.getMessage()), error);
+    }
+
+    /**
+     * 通知所有工作线程结束并等待，汇总各线程写入的行数
+     */
+    private void finishWorkers() {
+        for(int i=0; i<workers.size(); i++)
+            offerRows(END);
+
+        List<Map<String, Object>> list = new ArrayList<>();
+        for(Worker worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("worker", worker.index);
+            info.put("rows", worker.rows);
+            info.put("batches", worker.batches);
+            list.add(info);
+            printMsg(LogLevel.INFO, String.format("Worker #%d: %d rows, %d batches", worker.index, worker.rows, worker.batches));
+        }
+        workers.clear();
+
+        if(error != null)
+            throw new RuntimeException(String.format("Import failed: %s", error.getMessage()), error);
+        this.setResultInfo("workers", list);
+    }
+
+    /**
+     * 异常退出时中断还在运行的工作线程，未提交的批由各连接回滚
+     */
+    private void stopWorkers() throws InterruptedException {
+        for(Worker worker : workers)
+            worker.interrupt();
+        for(Worker worker : workers)
+            worker.join();
+        workers.clear();
+    }
+
+    /**
+     * 并行写入的工作线程：使用独立的连接和语句，从队列中取出一批行，绑定、执行并提交；使用COPY时每批一次COPY
+     */
+    private class Worker extends Thread {
+        final int index;
+        int rows = 0;
+        int batches = 0;
+
+        Worker(int index) {
+            super("import-" + index);
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            try (Connection conn = openConnection()) {
+                conn.setAutoCommit(false);
+                if(copySql != null) {
+                    PgBinaryCopy copy = openCopy(conn);
+                    try {
+                        RowBatch batch;
+                        while ((batch = queue.take()) != END && error == null)
+                            write(conn, copy, batch);
+                    } finally {
+                        copy.cancel();
+                    }
+                    return;
+                }
+
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    ParameterBinder[] binders = createBinders();
+                    RowBatch batch;
+                    while ((batch = queue.take()) != END && error == null)
+                        write(conn, ps, binders, batch);
+                }
+            } catch (Throwable e) {
+                if(error == null)
+                    error = e;
+                printMsg(LogLevel.ERROR, String.format("Import failed in worker #%d after %d rows", index, rows));
+                printMsg(e);
+            }
+        }
+
+        private void write(Connection conn, PreparedStatement ps, ParameterBinder[] binders, RowBatch batch) throws SQLException, IOException {
+            long start = System.nanoTime();
+            long tick = start;
+            for(int r=0; r<batch.size(); r++) {
+                boolean lob = bindRow(ps, binders, batch, r);
+                ps.addBatch();
+                long now = System.nanoTime();
+                metrics.add("bind", now - tick);
+                tick = now;
+                //大对象以流的方式绑定，立即执行
+                if(lob) {
+                    ps.executeBatch();
+                    tick = System.nanoTime();
+                    metrics.add("executeBatch", tick - now);
+                }
+            }
+
+            ps.executeBatch();
+            commit(conn, batch, start, tick);
+        }
+
+        private void write(Connection conn, PgBinaryCopy copy, RowBatch batch) throws SQLException, IOException {
+            long start = System.nanoTime();
+            copy.begin();
+            for(int r=0; r<batch.size(); r++)
+                copy.writeRow(batch, r);
+            long tick = System.nanoTime();
+            metrics.add("bind", tick - start);
+
+            endCopy(conn, copy);
+            commit(conn, batch, start, tick);
+        }
+
+        /**
+         * 提交一批，tick为开始执行的时间
+         */
+        private void commit(Connection conn, RowBatch batch, long start, long tick) throws SQLException {
+            long now = System.nanoTime();
+            metrics.add("executeBatch", now - tick);
+            conn.commit();
+            tick = System.nanoTime();
+            metrics.add("commit", tick - now);
+            metrics.addBatch(batch.size(), tick - start);
+
+            rows += batch.size();
+            batches += 1;
+        }
+    }
+
     @Override
     public int getStartRow() {
         return this.argStart;
     }
+
+    @Override
+    public boolean[] getRequiredFields() {
+        boolean[] required = new boolean[fieldTypes.length];
+        for(int i : bindPosMap.values())
+            required[i] = true;
+        return required;
+    }
 }
@@ -0,0 +1,92 @@
+package org.yuyun.dbtool.processor;
+
+import org.yuyun.dbtool.LogLevel;
+
+import java.io.File;
+import java.sql.Connection;
+import java.util.*;
+
+public class ImportSchemaProcessor extends SchemaProcessor {
+    private String argInputDir;
+    private String argManifest;
+    private String argTables;
+    private int argThreads;
+    private Map<String, String> importArgs;
+
+    @Override
+    public String getActionName() {
+        return "import_schema";
+    }
+
+    @Override
+    protected boolean isConnectionUsed() {
+        return true;
+    }
+
+    /**
+     * import_schema
+     *     --input S    export_schema的目标目录
+     *     --manifest S <可选>清单文件路径，默认为目录下的manifest.json
+     *     --tables S   <可选>逗号分隔的表名列表，只导入其中的表，默认为清单中导出成功的所有表
+     *     --threads N  <可选>同时导入的表数，每个线程使用独立的数据库连接，默认为4
+     *     --feedback、--batch <可选>传递给每个表的import
+     */
+    @Override
+    protected void parseArguments(Map<String, String> args) {
+        this.argInputDir = checkMandatoryArgumentString(args, "input");
+        this.argManifest = checkOptionalArgumentString(args, "manifest", new File(argInputDir, "manifest.json").getPath());
+        this.argTables = checkOptionalArgumentString(args, "tables", "");
+        this.argThreads = checkOptionalArgumentInt(args, "threads", 4);
+        this.importArgs = copyArguments(args, "feedback", "batch");
+
+        if(argThreads < 1)
+            throw new RuntimeException(String.format("The parameter threads is not a valid integer: %d", argThreads));
+    }
+
+    @Override
+    protected void process() throws Exception {
+        Set<String> selected = new HashSet<>();
+        for(String s : argTables.split(",")) {
+            if(!s.trim().isEmpty())
+                selected.add(s.trim().toLowerCase());
+        }
+
+        //按导出时的原始数据量排序
+        List<TableTask> tasks = new ArrayList<>();
+        for(TableTask exported : readManifest(new File(argManifest)).tables) {
+            if(exported.error != null) {
+                printMsg(LogLevel.WARN, String.format("Table %s skipped: export failed", exported.table));
+                continue;
+            }
+            if(!selected.isEmpty() && !selected.remove(exported.table.toLowerCase()))
+                continue;
+
+            TableTask task = new TableTask();
+            task.table = exported.table;
+            task.file = exported.file;
+            task.estimate = exported.size;
+            tasks.add(task);
+        }
+        if(!selected.isEmpty())
+            throw new RuntimeException(String.format("Tables not found in manifest: %s", String.join(",", selected)));
+        if(tasks.isEmpty())
+            throw new RuntimeException("No table to import");
+
+        int failed = processTables(tasks, argThreads);
+        setTableResults(tasks);
+        if(failed > 0)
+            throw new RuntimeException(String.format("%d of %d tables failed", failed, tasks.size()));
+    }
+
+    @Override
+    protected void processTable(TableTask task, Connection conn) throws Exception {
+        Map<String, String> args = new HashMap<>(importArgs);
+        args.put("table", task.table);
+        args.put("input", new File(argInputDir, task.file).getPath());
+
+        Map<String, Object> result = runProcessor(new ImportProcessor(), args, conn);
+        if(!result.containsKey("rows"))
+            throw new RuntimeException("Import failed");
+        task.rows = ((Number) result.get("rows")).intValue();
+    }
+}
@@ -0,0 +1,246 @@
+package org.yuyun.dbtool.processor;
+
+import org.yuyun.dbtool.FieldType;
+import org.yuyun.dbtool.LobRef;
+import org.yuyun.dbtool.RowBatch;
+import org.yuyun.dbtool.db.RelationalDB;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+/**
+ * 把RowBatch中一列的值绑定到插入语句的一个参数。导入开始时按列类型和数据库创建，逐行绑定时不再查找字段映射和判断类型。
+ * 日期和时间与上一行相同时重复使用同一个对象（不修改已绑定的对象），因此每个语句使用各自的一组实例。
+ */
+abstract class ParameterBinder {
+    final int pos;
+    final int column;
+
+    ParameterBinder(int pos, int column) {
+        this.pos = pos;
+        this.column = column;
+    }
+
+    /**
+     * @param r 行在批中的序号
+     * @return 是否以流的方式绑定了大对象
+     */
+    abstract boolean bind(PreparedStatement ps, RowBatch batch, int r) throws SQLException, IOException;
+
+    /**
+     * @param pos 参数位置，从1开始
+     * @param column 数据文件中的列序号
+     * @param db 目标数据库，用于绑定大对象
+     */
+    static ParameterBinder create(FieldType fieldType, int pos, int column, RelationalDB db) {
+        switch (fieldType) {
+            case Integer:
+                return new IntegerBinder(pos, column);
+            case Long:
+                return new LongBinder(pos, column);
+            case Double:
+                return new DoubleBinder(pos, column);
+            case Decimal:
+                return new DecimalBinder(pos, column);
+            case String:
+                return new StringBinder(pos, column, db);
+            case Date:
+                return new DateBinder(pos, column);
+            case DateTime:
+                return new DateTimeBinder(pos, column);
+            case DateTimeTZ:
+                return new DateTimeTZBinder(pos, column);
+            case Binary:
+                return new BinaryBinder(pos, column, db);
+            default:
+                return new NullBinder(pos, column);
+        }
+    }
+
+    private static class IntegerBinder extends ParameterBinder {
+        IntegerBinder(int pos, int column) {
+            super(pos, column);
+        }
+
+        @Override
+        boolean bind(PreparedStatement ps, RowBatch batch, int r) throws SQLException {
+            if(batch.isNull(column, r))
+                ps.setNull(pos, Types.INTEGER);
+            else
+                ps.setInt(pos, batch.getInt(column, r));
+            return false;
+        }
+    }
+
+    private static class LongBinder extends ParameterBinder {
+        LongBinder(int pos, int column) {
+            super(pos, column);
+        }
+
+        @Override
+        boolean bind(PreparedStatement ps, RowBatch batch, int r) throws SQLException {
+            if(batch.isNull(column, r))
+                ps.setNull(pos, Types.BIGINT);
+            else
+                ps.setLong(pos, batch.getLong(column, r));
+            return false;
+        }
+    }
+
+    private static class DoubleBinder extends ParameterBinder {
+        DoubleBinder(int pos, int column) {
+            super(pos, column);
+        }
+
+        @Override
+        boolean bind(PreparedStatement ps, RowBatch batch, int r) throws SQLException {
+            if(batch.isNull(column, r))
+                ps.setNull(pos, Types.DECIMAL);
+            else
+                ps.setDouble(pos, batch.getDouble(column, r));
+            return false;
+        }
+    }
+
+    private static class DecimalBinder extends ParameterBinder {
+        DecimalBinder(int pos, int column) {
+            super(pos, column);
+        }
+
+        @Override
+        boolean bind(PreparedStatement ps, RowBatch batch, int r) throws SQLException {
+            if(batch.isNull(column, r))
+                ps.setNull(pos, Types.DECIMAL);
+            else
+                ps.setBigDecimal(pos, (BigDecimal) batch.getObject(column, r));
+            return false;
+        }
+    }
+
+    private static class StringBinder extends ParameterBinder {
+        private final RelationalDB db;
+
+        StringBinder(int pos, int column, RelationalDB db) {
+            super(pos, column);
+            this.db = db;
+        }
+
+        @Override
+        boolean bind(PreparedStatement ps, RowBatch batch, int r) throws SQLException, IOException {
+            Object text = batch.isNull(column, r) ? null : batch.getObject(column, r);
+            if(text instanceof LobRef) {
+                LobRef ref = (LobRef) text;
+                db.setCharacterStream(ps, pos, ref.openReader(), ref.getLength());
+                return true;
+            }
+            ps.setString(pos, (String) text);
+            return false;
+        }
+    }
+
+    private static class DateBinder extends ParameterBinder {
+        private java.sql.Date last = null;
+
+        DateBinder(int pos, int column) {
+            super(pos, column);
+        }
+
+        @Override
+        boolean bind(PreparedStatement ps, RowBatch batch, int r) throws SQLException {
+            if(batch.isNull(column, r)) {
+                ps.setDate(pos, null);
+                return false;
+            }
+
+            long millis = batch.getLong(column, r);
+            if(last == null || last.getTime() != millis)
+                last = new java.sql.Date(millis);
+            ps.setDate(pos, last);
+            return false;
+        }
+    }
+
+    private static class DateTimeBinder extends ParameterBinder {
+        private Timestamp last = null;
+        private long lastMicros = 0;
+        private int lastNanos = 0;
+
+        DateTimeBinder(int pos, int column) {
+            super(pos, column);
+        }
+
+        @Override
+        boolean bind(PreparedStatement ps, RowBatch batch, int r) throws SQLException {
+            if(batch.isNull(column, r)) {
+                ps.setTimestamp(pos, null);
+                return false;
+            }
+
+            //数据文件中的时间精确到纳秒
+            long micros = batch.getLong(column, r);
+            int nanos = batch.getNanos(column, r);
+            if(last == null || lastMicros != micros || lastNanos != nanos) {
+                last = batch.getTimestamp(column, r);
+                lastMicros = micros;
+                lastNanos = nanos;
+            }
+            ps.setTimestamp(pos, last);
+            return false;
+        }
+    }
+
+    private static class DateTimeTZBinder extends ParameterBinder {
+        DateTimeTZBinder(int pos, int column) {
+            super(pos, column);
+        }
+
+        @Override
+        boolean bind(PreparedStatement ps, RowBatch batch, int r) throws SQLException {
+            if(batch.isNull(column, r))
+                ps.setNull(pos, Types.TIMESTAMP_WITH_TIMEZONE);
+            else
+                ps.setObject(pos, batch.getOffsetDateTime(column, r));
+            return false;
+        }
+    }
+
+    private static class BinaryBinder extends ParameterBinder {
+        private final RelationalDB db;
+
+        BinaryBinder(int pos, int column, RelationalDB db) {
+            super(pos, column);
+            this.db = db;
+        }
+
+        @Override
+        boolean bind(PreparedStatement ps, RowBatch batch, int r) throws SQLException, IOException {
+            Object data = batch.isNull(column, r) ? null : batch.getObject(column, r);
+            if(data == null)
+                ps.setNull(pos, Types.VARBINARY);
+            else if(data instanceof LobRef) {
+                LobRef ref = (LobRef) data;
+                db.setBinaryStream(ps, pos, ref.openStream(), ref.getLength());
+                return true;
+            }
+            else
+                ps.setBytes(pos, (byte[]) data);
+            return false;
+        }
+    }
+
+    private static class NullBinder extends ParameterBinder {
+        NullBinder(int pos, int column) {
+            super(pos, column);
+        }
+
+        @Override
+        boolean bind(PreparedStatement ps, RowBatch batch, int r) throws SQLException {
+            ps.setNull(pos, Types.NULL);
+            return false;
+        }
+    }
+}
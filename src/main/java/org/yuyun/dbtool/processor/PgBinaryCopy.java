@@ -0,0 +1,342 @@
+package org.yuyun.dbtool.processor;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.yuyun.dbtool.ChunkBuffer;
+import org.yuyun.dbtool.FieldType;
+import org.yuyun.dbtool.LobRef;
+import org.yuyun.dbtool.RowBatch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.TimeZone;
+
+/**
+ * 以PostgreSQL的二进制COPY格式（COPY ... FROM STDIN (FORMAT BINARY)）写入RowBatch中的行：
+ * 文件头，每行为字段数和各字段的长度（空值为-1）及值，文件尾为-1。
+ * 值按目标列的类型编码，导入开始时为每列创建编码器，类型组合不支持时由调用者改用INSERT。
+ * 编码后的数据先写入缓冲区，超过FLUSH_BYTES时发送；大对象直接从旁路文件发送，不读入内存。
+ */
+class PgBinaryCopy {
+    /**
+     * 将RowBatch中一列的非空值编码为字段长度和值
+     */
+    interface Encoder {
+        void write(PgBinaryCopy copy, RowBatch batch, int r) throws SQLException, IOException;
+    }
+
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    private static final int FLUSH_BYTES = 1 << 20;
+    //PostgreSQL的日期和时间从2000-01-01开始计算
+    private static final long PG_EPOCH_DAYS = 10957;
+    private static final long PG_EPOCH_MICROS = PG_EPOCH_DAYS * 86400L * 1000000L;
+
+    private final CopyManager manager;
+    private final String sql;
+    private final int[] columns;
+    private final Encoder[] encoders;
+    private final ChunkBuffer buf = new ChunkBuffer(FLUSH_BYTES + 4096);
+    private final byte[] streamBuf = new byte[64 * 1024];
+    private CopyIn copyIn = null;
+
+    /**
+     * @param sql COPY语句
+     * @param columns 各字段在数据文件中的列序号
+     * @param encoders 各字段的编码器，见encoder
+     */
+    PgBinaryCopy(Connection conn, String sql, int[] columns, Encoder[] encoders) throws SQLException {
+        this.manager = conn.unwrap(PGConnection.class).getCopyAPI();
+        this.sql = sql;
+        this.columns = columns;
+        this.encoders = encoders;
+    }
+
+    /**
+     * 创建编码器
+     * @param column 数据文件中的列序号
+     * @param targetType 目标列的类型名称（ResultSetMetaData.getColumnTypeName），eg.int4、numeric、timestamptz
+     * @return 类型组合不支持时返回null
+     */
+    static Encoder encoder(FieldType fieldType, int column, String targetType) {
+        TimeZone tz = TimeZone.getDefault();
+        switch (targetType.toLowerCase()) {
+            case "int2":
+                if(fieldType == FieldType.Integer || fieldType == FieldType.Long)
+                    return (copy, batch, r) -> {
+                        long v = getLong(fieldType, batch, column, r);
+                        if(v < Short.MIN_VALUE || v > Short.MAX_VALUE)
+                            throw new SQLException(String.format("Value %d out of range for type %s", v, targetType));
+                        copy.buf.writeInteger(2);
+                        copy.buf.writeShort((short) v);
+                    };
+                break;
+            case "int4":
+                if(fieldType == FieldType.Integer || fieldType == FieldType.Long)
+                    return (copy, batch, r) -> {
+                        long v = getLong(fieldType, batch, column, r);
+                        if(v < Integer.MIN_VALUE || v > Integer.MAX_VALUE)
+                            throw new SQLException(String.format("Value %d out of range for type %s", v, targetType));
+                        copy.buf.writeInteger(4);
+                        copy.buf.writeInteger((int) v);
+                    };
+                break;
+            case "int8":
+                if(fieldType == FieldType.Integer || fieldType == FieldType.Long)
+                    return (copy, batch, r) -> {
+                        copy.buf.writeInteger(8);
+                        copy.buf.writeLong(getLong(fieldType, batch, column, r));
+                    };
+                break;
+            case "float4":
+                if(isNumber(fieldType))
+                    return (copy, batch, r) -> {
+                        copy.buf.writeInteger(4);
+                        copy.buf.writeInteger(Float.floatToRawIntBits((float) getDouble(fieldType, batch, column, r)));
+                    };
+                break;
+            case "float8":
+                if(isNumber(fieldType))
+                    return (copy, batch, r) -> {
+                        copy.buf.writeInteger(8);
+                        copy.buf.writeDouble(getDouble(fieldType, batch, column, r));
+                    };
+                break;
+            case "numeric":
+                if(isNumber(fieldType))
+                    return (copy, batch, r) -> copy.writeNumeric(getDecimal(fieldType, batch, column, r));
+                break;
+            case "text":
+            case "varchar":
+            case "bpchar":
+                if(fieldType == FieldType.String)
+                    return (copy, batch, r) -> {
+                        Object text = batch.getObject(column, r);
+                        if(text instanceof LobRef)
+                            copy.writeLob((LobRef) text);
+                        else
+                            copy.buf.writeString((String) text);
+                    };
+                break;
+            case "bytea":
+                if(fieldType == FieldType.Binary)
+                    return (copy, batch, r) -> {
+                        Object data = batch.getObject(column, r);
+                        if(data instanceof LobRef)
+                            copy.writeLob((LobRef) data);
+                        else {
+                            byte[] bytes = (byte[]) data;
+                            copy.buf.writeInteger(bytes.length);
+                            copy.buf.write(bytes, 0, bytes.length);
+                        }
+                    };
+                break;
+            case "date":
+                //与setDate相同，取默认时区的日期
+                if(fieldType == FieldType.Date)
+                    return (copy, batch, r) -> {
+                        long millis = batch.getLong(column, r);
+                        long day = Math.floorDiv(millis + tz.getOffset(millis), 86400000L);
+                        copy.buf.writeInteger(4);
+                        copy.buf.writeInteger((int) (day - PG_EPOCH_DAYS));
+                    };
+                break;
+            case "timestamp":
+                //与setTimestamp相同，取默认时区的本地时间
+                if(fieldType == FieldType.DateTime)
+                    return (copy, batch, r) -> {
+                        long micros = getMicros(batch, column, r);
+                        micros += tz.getOffset(Math.floorDiv(micros, 1000L)) * 1000L;
+                        copy.buf.writeInteger(8);
+                        copy.buf.writeLong(micros - PG_EPOCH_MICROS);
+                    };
+                break;
+            case "timestamptz":
+                if(fieldType == FieldType.DateTime || fieldType == FieldType.DateTimeTZ)
+                    return (copy, batch, r) -> {
+                        copy.buf.writeInteger(8);
+                        copy.buf.writeLong(getMicros(batch, column, r) - PG_EPOCH_MICROS);
+                    };
+                break;
+        }
+
+        //数据文件中没有值的列
+        if(fieldType == FieldType.Null)
+            return (copy, batch, r) -> copy.buf.writeInteger(-1);
+        return null;
+    }
+
+    private static boolean isNumber(FieldType fieldType) {
+        return fieldType == FieldType.Integer || fieldType == FieldType.Long || fieldType == FieldType.Double || fieldType == FieldType.Decimal;
+    }
+
+    private static long getLong(FieldType fieldType, RowBatch batch, int column, int r) {
+        return fieldType == FieldType.Integer ? batch.getInt(column, r) : batch.getLong(column, r);
+    }
+
+    private static double getDouble(FieldType fieldType, RowBatch batch, int column, int r) {
+        switch (fieldType) {
+            case Integer:
+                return batch.getInt(column, r);
+            case Long:
+                return batch.getLong(column, r);
+            case Double:
+                return batch.getDouble(column, r);
+            default:
+                return ((BigDecimal) batch.getObject(column, r)).doubleValue();
+        }
+    }
+
+    private static BigDecimal getDecimal(FieldType fieldType, RowBatch batch, int column, int r) throws SQLException {
+        switch (fieldType) {
+            case Integer:
+                return BigDecimal.valueOf(batch.getInt(column, r));
+            case Long:
+                return BigDecimal.valueOf(batch.getLong(column, r));
+            case Double:
+                double v = batch.getDouble(column, r);
+                if(Double.isNaN(v) || Double.isInfinite(v))
+                    throw new SQLException(String.format("Value %s not supported for type numeric", v));
+                return BigDecimal.valueOf(v);
+            default:
+                return (BigDecimal) batch.getObject(column, r);
+        }
+    }
+
+    /**
+     * @return epoch微秒，不足1微秒的纳秒四舍五入，与驱动发送的时间相同
+     */
+    private static long getMicros(RowBatch batch, int column, int r) {
+        return batch.getLong(column, r) + (batch.getNanos(column, r) >= 500 ? 1 : 0);
+    }
+
+    /**
+     * 开始COPY，写入文件头
+     */
+    void begin() throws SQLException {
+        copyIn = manager.copyIn(sql);
+        buf.reset();
+        buf.write(SIGNATURE, 0, SIGNATURE.length);
+        buf.writeInteger(0);    //标志
+        buf.writeInteger(0);    //扩展头的长度
+    }
+
+    void writeRow(RowBatch batch, int r) throws SQLException, IOException {
+        buf.writeShort((short) encoders.length);
+        for(int i=0; i<encoders.length; i++) {
+            if(batch.isNull(columns[i], r))
+                buf.writeInteger(-1);
+            else
+                encoders[i].write(this, batch, r);
+        }
+        if(buf.size() >= FLUSH_BYTES)
+            flush();
+    }
+
+    /**
+     * 写入文件尾并结束COPY
+     * @return 写入的行数
+     */
+    long end() throws SQLException {
+        buf.writeShort((short) -1);
+        flush();
+        CopyIn c = copyIn;
+        copyIn = null;
+        return c.endCopy();
+    }
+
+    /**
+     * 异常时取消未结束的COPY
+     */
+    void cancel() {
+        if(copyIn == null)
+            return;
+
+        try {
+            copyIn.cancelCopy();
+        } catch (SQLException ignored) {
+        }
+        copyIn = null;
+    }
+
+    boolean isActive() {
+        return copyIn != null;
+    }
+
+    private void flush() throws SQLException {
+        if(buf.size() > 0)
+            copyIn.writeToCopy(buf.array(), 0, buf.size());
+        buf.reset();
+    }
+
+    private void writeLob(LobRef ref) throws SQLException, IOException {
+        if(ref.getLength() > Integer.MAX_VALUE)
+            throw new SQLException(String.format("Field too large for COPY: %s", ref));
+
+        buf.writeInteger((int) ref.getLength());
+        flush();
+        long left = ref.getLength();
+        try(InputStream is = ref.openStream()) {
+            while (left > 0) {
+                int n = is.read(streamBuf, 0, (int) Math.min(streamBuf.length, left));
+                if(n < 0)
+                    throw new IOException(String.format("Unexpected end of %s", ref));
+                copyIn.writeToCopy(streamBuf, 0, n);
+                left -= n;
+            }
+        }
+    }
+
+    /**
+     * numeric的二进制格式：位数、权重、符号、小数位数（各int16），然后是以10000为基数的各位（int16）
+     */
+    private void writeNumeric(BigDecimal value) {
+        if(value.scale() < 0)
+            value = value.setScale(0);
+        int scale = value.scale();
+        String s = value.unscaledValue().abs().toString();
+
+        //整数部分左补0、小数部分右补0到4的倍数后每4位一组
+        int intLen = Math.max(0, s.length() - scale);
+        int intPad = (4 - intLen % 4) % 4;
+        int fracPad = (4 - scale % 4) % 4;
+        StringBuilder sb = new StringBuilder(intPad + s.length() + fracPad + scale);
+        for(int i=0; i<intPad; i++)
+            sb.append('0');
+        if(s.length() < scale) {
+            for(int i=s.length(); i<scale; i++)
+                sb.append('0');
+        }
+        sb.append(s);
+        for(int i=0; i<fracPad; i++)
+            sb.append('0');
+
+        int groups = sb.length() / 4;
+        int weight = (intLen + intPad) / 4 - 1;
+        int first = 0;
+        int last = groups;
+        while (first < last && group(sb, first) == 0)
+            first++;
+        while (last > first && group(sb, last - 1) == 0)
+            last--;
+
+        int ndigits = last - first;
+        buf.writeInteger(8 + ndigits * 2);
+        buf.writeShort((short) ndigits);
+        buf.writeShort((short) (ndigits == 0 ? 0 : weight - first));
+        buf.writeShort((short) (ndigits == 0 || value.signum() >= 0 ? 0 : 0x4000));
+        buf.writeShort((short) scale);
+        for(int i=first; i<last; i++)
+            buf.writeShort((short) group(sb, i));
+    }
+
+    private static int group(StringBuilder sb, int group) {
+        int v = 0;
+        for(int i=group * 4; i<group * 4 + 4; i++)
+            v = v * 10 + (sb.charAt(i) - '0');
+        return v;
+    }
+}
@@ -6,23 +6,35 @@ import org.yuyun.dbtool.*;
 import org.yuyun.dbtool.db.MySQLDB;
 import org.yuyun.dbtool.db.OracleDB;
 import org.yuyun.dbtool.db.PostgreSQLDB;
+import org.yuyun.dbtool.db.RelationalDB;
 import org.yuyun.dbtool.db.SQLiteDB;
 
 import java.io.*;
 import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
 
 public abstract class Processor {
     public static final int MAGIC_CODE = 0x89ABCDEF;
-    public static final short FILE_FORMAT = 0x2;
-    private static final SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    public static final short FILE_FORMAT = 0x3;
+    public static final short MIN_FILE_FORMAT = 0x2;
+    //读取数据文件时最多预读的数据块数和预读的数据量（压缩前后之和）
+    private static final int READ_AHEAD_CHUNKS = 4;
+    private static final long READ_AHEAD_BYTES = 64L * 1024 * 1024;
+    //导出、导入的工作线程和多表处理的线程同时输出日志，使用线程安全的DateTimeFormatter
+    private static final DateTimeFormatter df = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static PrintStream infoOut = System.out;   //数据写入标准输出时改为标准错误
 
     private DBType dbType = DBType.None;
+    private String jdbcUrl = null; //JDBC连接串
+    private String jdbcUser = null; //数据库用户名
+    private String jdbcPass = null; //数据库密码
     private Connection conn = null; //数据库连接
     private final Map<String, Object> result = new HashMap<>(); //处理结果数据
 
@@ -53,7 +65,7 @@ public abstract class Processor {
 
         //处理数据库连接命令行
         if(processor.isConnectionUsed())
-            processor.parseConnectionArguments(args);
+            processor.parseConnectionArguments(args, "");
 
         //处理命令行
         processor.parseArguments(args);
@@ -62,14 +74,14 @@ public abstract class Processor {
         Map<String, Object> op = new HashMap<>();
         long tick = System.currentTimeMillis();
         try {
-            op.put("start", df.format(Calendar.getInstance().getTime()));
+            op.put("start", LocalDateTime.now().format(df));
             processor.process();
-            op.put("end", df.format(Calendar.getInstance().getTime()));
+            op.put("end", LocalDateTime.now().format(df));
             op.put("cost", System.currentTimeMillis() - tick);
 
             op.put("code", 0);
         }catch (Throwable e) {
-            op.put("end", df.format(Calendar.getInstance().getTime()));
+            op.put("end", LocalDateTime.now().format(df));
             op.put("cost", System.currentTimeMillis() - tick);
 
             op.put("code", -1);
@@ -189,9 +201,10 @@ public abstract class Processor {
      *     --user   数据库用户名
      *     --pass   数据库密码
      * @param args 原始参数
+     * @param prefix 参数名前缀，同时连接两个数据库时使用，eg."src-"表示--src-type、--src-host...
      */
-    private void parseConnectionArguments(Map<String, String> args) throws ClassNotFoundException, SQLException {
-        String dbTypeName = args.get("type");
+    protected void parseConnectionArguments(Map<String, String> args, String prefix) throws ClassNotFoundException, SQLException {
+        String dbTypeName = args.get(prefix + "type");
         if(dbTypeName == null || dbTypeName.isEmpty())
             throw new RuntimeException("Database type not specified");
 
@@ -200,12 +213,12 @@ public abstract class Processor {
             throw new RuntimeException("Unsupported database type");
 
         //生成JDBC
-        String jdbc = checkOptionalArgumentString(args, "jdbc", "");
+        String jdbc = checkOptionalArgumentString(args, prefix + "jdbc", "");
         if(jdbc.isEmpty()) {
             if (dbType.equals(DBType.Oracle)) {
-                String host = checkMandatoryArgumentString(args, "host");
-                String db = checkOptionalArgumentString(args, "db", "");
-                String sid = checkOptionalArgumentString(args, "sid", "");
+                String host = checkMandatoryArgumentString(args, prefix + "host");
+                String db = checkOptionalArgumentString(args, prefix + "db", "");
+                String sid = checkOptionalArgumentString(args, prefix + "sid", "");
                 if (!db.isEmpty())
                     jdbc = String.format("jdbc:oracle:thin:@//%s/%s", host, db);
                 else if (!sid.isEmpty())
@@ -214,18 +227,18 @@ public abstract class Processor {
                     throw new RuntimeException("Parameter \"db\" or \"sid\" must be specified");
                 Class.forName("oracle.jdbc.OracleDriver");
             } else if (dbType.equals(DBType.MySQL)) {
-                String host = checkMandatoryArgumentString(args, "host");
-                String db = checkMandatoryArgumentString(args, "db");
+                String host = checkMandatoryArgumentString(args, prefix + "host");
+                String db = checkMandatoryArgumentString(args, prefix + "db");
                 jdbc = String.format("jdbc:mysql://%s/%s?useSSL=false&allowPublicKeyRetrieval=true&useUnicode=true&characterEncoding=UTF-8&zeroDateTimeBehavior=convertToNull",
                         host, db);
                 Class.forName("com.mysql.cj.jdbc.Driver");
             } else if (dbType.equals(DBType.PostgreSQL)) {
-                String host = checkMandatoryArgumentString(args, "host");
-                String db = checkMandatoryArgumentString(args, "db");
+                String host = checkMandatoryArgumentString(args, prefix + "host");
+                String db = checkMandatoryArgumentString(args, prefix + "db");
                 jdbc = String.format("jdbc:postgresql://%s/%s", host, db);
                 Class.forName("org.postgresql.Driver");
             } else if (dbType.equals(DBType.SQLite)) {
-                String db = checkMandatoryArgumentString(args, "db");
+                String db = checkMandatoryArgumentString(args, prefix + "db");
                 jdbc = String.format("jdbc:sqlite://%s", db);
                 Class.forName("org.sqlite.JDBC");
             }
@@ -237,15 +250,44 @@ public abstract class Processor {
             case Oracle:
             case MySQL:
             case PostgreSQL:
-                user = checkMandatoryArgumentString(args, "user");
-                pass = checkMandatoryArgumentString(args, "pass");
+                user = checkMandatoryArgumentString(args, prefix + "user");
+                pass = checkMandatoryArgumentString(args, prefix + "pass");
                 break;
             case SQLite:
                 break;
         }
 
         //建立连接
-        this.conn = DriverManager.getConnection(jdbc, user, pass);
+        this.jdbcUrl = jdbc;
+        this.jdbcUser = user;
+        this.jdbcPass = pass;
+        this.conn = openConnection();
+    }
+
+    /**
+     * 按照命令行中的连接参数建立新的数据库连接，供并行处理的工作线程使用
+     * @return 新的数据库连接，由调用者负责关闭
+     */
+    protected Connection openConnection() throws SQLException {
+        return DriverManager.getConnection(jdbcUrl, jdbcUser, jdbcPass);
+    }
+
+    /**
+     * 在当前进程中使用指定的连接执行另一个处理器，用于一次处理多个表
+     * @param processor 处理器
+     * @param args 处理器参数，不包括连接参数
+     * @param conn 数据库连接，由调用者负责关闭
+     * @return 处理结果数据
+     */
+    protected Map<String, Object> runProcessor(Processor processor, Map<String, String> args, Connection conn) throws Exception {
+        processor.dbType = this.dbType;
+        processor.jdbcUrl = this.jdbcUrl;
+        processor.jdbcUser = this.jdbcUser;
+        processor.jdbcPass = this.jdbcPass;
+        processor.conn = conn;
+        processor.parseArguments(args);
+        processor.process();
+        return processor.result;
     }
 
     public static boolean isStringIn(String text, boolean caseinsensitive, List<String> list) {
@@ -272,15 +314,24 @@ public abstract class Processor {
      * @return 数据表DDL
      */
     protected String getTableDDL(String tableName) throws SQLException {
+        RelationalDB db = getRelationalDB();
+        return db == null ? null : db.getTableDDL(conn, tableName);
+    }
+
+    /**
+     * 获取当前数据库类型对应的方言实现
+     * @return 方言实现，未知数据库类型返回null
+     */
+    protected RelationalDB getRelationalDB() {
         switch (dbType) {
             case Oracle:
-                return new OracleDB().getTableDDL(conn, tableName);
+                return new OracleDB();
             case MySQL:
-                return new MySQLDB().getTableDDL(conn, tableName);
+                return new MySQLDB();
             case PostgreSQL:
-                return new PostgreSQLDB().getTableDDL(conn, tableName);
+                return new PostgreSQLDB();
             case SQLite:
-                return new SQLiteDB().getTableDDL(conn, tableName);
+                return new SQLiteDB();
         }
         return null;
     }
@@ -291,7 +342,7 @@ public abstract class Processor {
         switch (level) {
             case DEBUG:
             case INFO:
-                out = System.out;
+                out = infoOut;
                 break;
             case WARN:
             case ERROR:
@@ -299,9 +350,15 @@ public abstract class Processor {
                 break;
         }
 
-        out.print(df.format(Calendar.getInstance().getTime()));
-        out.printf(" [%s] ", level.name());
-        out.println(msg);
+        //整行一次输出，避免多个线程的日志交错
+        out.println(String.format("%s [%s] %s", LocalDateTime.now().format(df), level.name(), msg));
+    }
+
+    /**
+     * 标准输出用于输出数据时，所有日志都写入标准错误
+     */
+    protected static void redirectLogToStderr() {
+        infoOut = System.err;
     }
 
     public static void printMsg(Throwable e) {
@@ -322,18 +379,38 @@ public abstract class Processor {
     }
 
     protected void processDataFile(String filename, DataFileProcessor fp, int feedback) throws IOException {
+        processDataFile(filename, fp, feedback, null);
+    }
+
+    /**
+     * 读取数据文件，依次回调fp
+     * @param filter 过滤条件，只有满足条件的行回调onRow，为null时不过滤
+     */
+    protected void processDataFile(String filename, DataFileProcessor fp, int feedback, String filter) throws IOException {
+        processDataFile(filename, fp, feedback, filter, null);
+    }
+
+    /**
+     * 读取数据文件，依次回调fp，fp实现RowBatchProcessor时按批回调onBatch
+     * @param filter 过滤条件，只有满足条件的行回调onRow，为null时不过滤
+     * @param metrics 不为null时累计read、inflate、wait和decode阶段的耗时，不包括回调的耗时。
+     *                后续数据块在解压线程中预读，inflate为各线程耗时之和，wait为等待解压完成的耗时
+     */
+    protected void processDataFile(String filename, DataFileProcessor fp, int feedback, String filter, Metrics metrics) throws IOException {
         int rows = 0, totalRows = 0, startRow = 0;
-        long actualBytes = 0;
+        long actualBytes = 0, indexOffset = 0;
         String ddl = null;
         FieldType[] fieldTypes = null;
+        int[] scales = null;
         String[] names = null, fieldTypeNames = null;
         byte flag;
 //        HashMap<Integer, Integer> fieldsMap = new HashMap<>();
 //        if(args.containsKey("start"))
 //            start_row = Integer.parseInt(args.get("start").toString());
 
-        DataFile in = new DataFile(filename, "r");
+        DataFile in = DataFile.openInput(filename);
         in.checkFileHeader();
+        in.setMetrics(metrics);
 
         //读取ddl
         flag = (byte) in.readByte();
@@ -342,8 +419,15 @@ public abstract class Processor {
             flag = (byte) in.readByte();
         }
 
+        //读取增量导出信息
+        if(flag == StartFlag.Delta.ordinal()) {
+            fp.onDelta(DeltaInfo.read(in));
+            flag = (byte) in.readByte();
+        }
+
         //读取列信息
         fieldTypes = new FieldType[in.readShort()];
+        scales = new int[fieldTypes.length];
         names = new String[fieldTypes.length];
         fieldTypeNames = new String[fieldTypes.length];
 
@@ -352,119 +436,164 @@ public abstract class Processor {
             fieldTypes[i] = FieldType.fromInt(in.readByte());
             fieldTypeNames[i] = in.readString();
             names[i] = in.readString();
+            //定点数列有小数位数（格式版本2没有定点数列）
+            if(fieldTypes[i] == FieldType.Decimal)
+                scales[i] = in.readByte();
         }
 
         //读取总行数
         totalRows = in.readInteger();
         actualBytes = in.readLong();
+        if(in.getFormat() >= 3)
+            indexOffset = in.readLong();
 
         if(!fp.onSummary(ddl, fieldTypes.length, names, fieldTypes, fieldTypeNames, totalRows, actualBytes))
             return;
 
         startRow = fp.getStartRow();
 
+        //根据数据块索引直接定位到起始行所在的数据块，没有索引的旧文件和标准输入顺序读取
+        if(startRow > 1 && indexOffset > 0 && in.isSeekable())
+            rows = seekToRow(in, indexOffset, startRow);
+
+        LobFile lobs = new LobFile(filename, false, 0);
+        ChunkReadAhead readAhead = new ChunkReadAhead(Math.min(READ_AHEAD_CHUNKS, Runtime.getRuntime().availableProcessors()), metrics);
         try {
             int totalProcRows = 0;
             Object[] rowData = new Object[fieldTypeNames.length];
-            ByteArrayInputStream bytesChuck = new ByteArrayInputStream(new byte[StartFlag.EOF.ordinal()]);
-            DataFile chunk = new DataFile(new DataInputStream(bytesChuck));
-
-            while (true){
-                //读取缓冲区
-                flag = (byte) chunk.readByte();
-                if (flag != StartFlag.DataRow.ordinal()) {
-                    //缓冲区为空，从文件读取下一缓冲区
-                    flag = (byte)in.readByte();
-                    if(flag != StartFlag.DataRow.ordinal())
-                        break;
-
-                    bytesChuck = new ByteArrayInputStream(in.readCompressBinary());
-                    chunk = new DataFile(new DataInputStream(bytesChuck));
-
-                    //读取缓冲区
-                    flag = (byte) chunk.readByte();
-                }
-
-                rows += 1;
-
-//                if(rows >= startRow)
-//                    batch += 1;
-
-                for(int i=0; i<fieldTypes.length; i++) {
-                    if (rows >= startRow)
-                        rowData[i] = null;
-                    switch (fieldTypes[i]) {
-                        case Null:
-                            break;
-                        case Integer:
-                            if (chunk.readByte() == 0) {
-                                int iVal = chunk.readInteger();
-                                if (rows >= startRow)
-                                    rowData[i] = iVal;
-                            }
-                            break;
-                        case Long:
-                            if (chunk.readByte() == 0) {
-                                long lVal = chunk.readLong();
-                                if (rows >= startRow)
-                                    rowData[i] = lVal;
-                            }
-                            break;
-                        case Double:
-                            if (chunk.readByte() == 0) {
-                                double fVal = chunk.readDouble();
-                                if (rows >= startRow)
-                                    rowData[i] = fVal;
-                            }
-                            break;
-                        case String:
-                            String sVal = chunk.readString();
-                            if (rows >= startRow) {
-                                if(sVal != null) {
-                                    int index = sVal.indexOf('\u0000');
-                                    if (index != -1)
-                                        sVal = sVal.substring(0, index);
-                                }
-                                rowData[i] = sVal;
-                            }
-                            break;
-                        case Date:
-                            java.util.Date dateVal = chunk.readDate();
-                            if (rows >= startRow)
-                                rowData[i] = dateVal;
-                            break;
-                        case DateTime:
-                            java.util.Date dtVal = chunk.readDateTime();
-                            if (rows >= startRow)
-                                rowData[i] = dtVal;
-                            break;
-                        case Binary:
-                            byte[] blob = chunk.readBinary();
-                            if (rows >= startRow)
-                                rowData[i] = blob;
-                            break;
-                    }
-                }
-
-                if (rows >= startRow) {
-                    if ((rows % feedback) == 0) {
-                        printMsg(LogLevel.INFO, String.format("%d rows, %.4g%% ...", rows, ((int)(rows * 10000.0 / totalRows)) / 100.0));
-                    }
-
-                    totalProcRows += 1;
-                    if (!fp.onRow(rows, rowData)) {
+            ChunkReader reader = new ChunkReader(in, fieldTypes, scales, fp.getRequiredFields(), RowFilter.parse(filter, names, fieldTypes), lobs);
+            reader.setRow(rows);
+            reader.setReadAhead(readAhead, READ_AHEAD_CHUNKS, READ_AHEAD_BYTES, metrics);
+
+            if(fp instanceof RowBatchProcessor) {
+                //按批回调，不逐行调用onRow
+                RowBatch batch = new RowBatch(fieldTypes);
+                while (next(reader, batch, metrics)) {
+                    int first = batch.getFirstRow();
+                    rows = first + batch.size() - 1;
+                    if(rows < startRow)
+                        continue;
+                    batch.removeFirst(startRow - first);
+
+                    if((rows / feedback) != (rows - batch.size()) / feedback)
+                        printProgress(rows, totalRows);
+
+                    int n = ((RowBatchProcessor) fp).onBatch(batch);
+                    totalProcRows += n;
+                    if(n < batch.size()) {
                         fp.onRowEnd(totalProcRows);
                         return;
                     }
                 }
             }
+            else {
+                while (next(reader, rowData, metrics)) {
+                    rows = reader.getRow();
+
+                    if (rows >= startRow) {
+                        if ((rows % feedback) == 0)
+                            printProgress(rows, totalRows);
+
+                        totalProcRows += 1;
+                        if (!fp.onRow(rows, rowData)) {
+                            fp.onRowEnd(totalProcRows);
+                            return;
+                        }
+                    }
+                }
+            }
 
-            printMsg(LogLevel.INFO, String.format("%d rows, %.4g%% ...", rows, ((int)(rows * 10000.0 / totalRows)) / 100.0));
+            rows = reader.getRow();
+            printProgress(rows, totalRows);
+
+            //流式写入的文件总行数在文件尾，读完后核对，发现被截断的输入
+            if(totalRows < 0 && in.getFormat() >= 3) {
+                in.skipBytes(in.readInteger() * 16);
+                int trailerRows = in.readInteger();
+                if(trailerRows != rows)
+                    throw new IOException(String.format("Data file is incomplete: %d rows read, %d rows expected", rows, trailerRows));
+            }
+            if(filter != null)
+                printMsg(LogLevel.INFO, String.format("Filter skipped %d of %d chunks", reader.getSkippedChunks(), reader.getChunks()));
             fp.onRowEnd(totalProcRows);
         }
+        catch (EOFException e) {
+            throw new IOException(String.format("Data file is truncated after row %d", rows), e);
+        }
         finally {
+            readAhead.close();
             in.close();
+            lobs.close();
+        }
+    }
+
+    /**
+     * 读取下一批行，累计不包括读取数据块和等待解压的耗时作为decode阶段的耗时
+     */
+    private static boolean next(ChunkReader reader, RowBatch batch, Metrics metrics) throws IOException {
+        if(metrics == null)
+            return reader.nextBatch(batch);
+
+        long tick = System.nanoTime();
+        long io = metrics.get("read") + metrics.get("wait");
+        boolean found = reader.nextBatch(batch);
+        metrics.add("decode", System.nanoTime() - tick - (metrics.get("read") + metrics.get("wait") - io));
+        return found;
+    }
+
+    /**
+     * 读取下一行，累计不包括读取数据块和等待解压的耗时作为decode阶段的耗时
+     */
+    private static boolean next(ChunkReader reader, Object[] rowData, Metrics metrics) throws IOException {
+        if(metrics == null)
+            return reader.next(rowData);
+
+        long tick = System.nanoTime();
+        long io = metrics.get("read") + metrics.get("wait");
+        boolean found = reader.next(rowData);
+        metrics.add("decode", System.nanoTime() - tick - (metrics.get("read") + metrics.get("wait") - io));
+        return found;
+    }
+
+    private static void printProgress(int rows, int totalRows) {
+        if(totalRows < 0)
+            printMsg(LogLevel.INFO, String.format("%d rows ...", rows));
+        else
+            printMsg(LogLevel.INFO, String.format("%d rows, %.4g%% ...", rows, ((int)(rows * 10000.0 / totalRows)) / 100.0));
+    }
+
+    /**
+     * 根据数据块索引定位到指定行所在的数据块
+     * @param indexOffset 索引在文件中的位置
+     * @param row 行号，从1开始
+     * @return 定位到的数据块之前的行数，行号超出范围时文件位置不变并返回0
+     */
+    private static int seekToRow(DataFile in, long indexOffset, int row) throws IOException {
+        long pos = in.getFilePointer();
+        in.seek(indexOffset);
+        byte[] bytes = new byte[in.readInteger() * 16];
+        in.readFully(bytes);
+        ByteBuffer index = ByteBuffer.wrap(bytes);
+
+        //按之前的总行数二分查找
+        int lo = 0, hi = bytes.length / 16 - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long offset = index.getLong(mid * 16);
+            int before = index.getInt(mid * 16 + 8);
+            int rows = index.getInt(mid * 16 + 12);
+            if(row <= before)
+                hi = mid - 1;
+            else if(row > before + rows)
+                lo = mid + 1;
+            else {
+                in.seek(offset);
+                return before;
+            }
         }
+
+        in.seek(pos);
+        return 0;
     }
 
     /**
@@ -0,0 +1,168 @@
+package org.yuyun.dbtool.processor;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.yuyun.dbtool.LogLevel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 多表导出/导入的公共部分：按估算大小从大到小排列各表，由固定数量的工作线程各自使用独立的连接，
+ * 处理完一个表后再领取剩余的最大的表。单个表失败时记录错误并继续处理其他表。
+ */
+public abstract class SchemaProcessor extends Processor {
+    /**
+     * 清单中的一个表
+     */
+    static class TableTask {
+        String  table;
+        String  file;       //数据文件名，相对于清单所在目录
+        long    estimate;   //估算的大小，只用于排序
+        int     rows;
+        long    size;       //原始数据量
+        long    cost;       //耗时（毫秒）
+        String  error;
+    }
+
+    /**
+     * 清单文件内容
+     */
+    static class Manifest {
+        String  start;
+        String  end;
+        List<TableTask> tables = new ArrayList<>();
+    }
+
+    /**
+     * 使用指定的连接处理一个表，填写行数和数据量
+     */
+    protected abstract void processTable(TableTask task, Connection conn) throws Exception;
+
+    /**
+     * 按估算大小从大到小并行处理所有表
+     * @param threads 工作线程数
+     * @return 失败的表的数量
+     */
+    protected int processTables(List<TableTask> tasks, int threads) throws InterruptedException {
+        List<TableTask> sorted = new ArrayList<>(tasks);
+        sorted.sort((a, b) -> Long.compare(b.estimate, a.estimate));
+        Queue<TableTask> queue = new ConcurrentLinkedQueue<>(sorted);
+
+        threads = Math.max(1, Math.min(threads, tasks.size()));
+        printMsg(LogLevel.INFO, String.format("%d tables, %d threads", tasks.size(), threads));
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for(int i=0; i<threads; i++) {
+            pool.submit(() -> {
+                try (Connection conn = openConnection()) {
+                    TableTask task;
+                    while ((task = queue.poll()) != null)
+                        runTask(task, conn);
+                } catch (Throwable e) {
+                    //连接失败时其他线程继续处理剩余的表
+                    printMsg(e);
+                }
+                return null;
+            });
+        }
+        pool.shutdown();
+        while (!pool.awaitTermination(1, TimeUnit.SECONDS))
+            ;
+
+        //所有线程连接失败时队列中还有未处理的表
+        for(TableTask task : queue)
+            task.error = "Not processed";
+
+        int failed = 0;
+        for(TableTask task : tasks) {
+            if(task.error != null)
+                failed += 1;
+        }
+        return failed;
+    }
+
+    /**
+     * 处理一个表，失败时记录错误并回滚连接上未结束的事务，使后续的表可以继续使用该连接
+     * @throws SQLException 无法恢复连接时抛出，由其他线程处理剩余的表
+     */
+    private void runTask(TableTask task, Connection conn) throws SQLException {
+        long tick = System.currentTimeMillis();
+        printMsg(LogLevel.INFO, String.format("Table %s ...", task.table));
+        try {
+            processTable(task, conn);
+            task.cost = System.currentTimeMillis() - tick;
+            printMsg(LogLevel.INFO, String.format("Table %s: %d rows, %d ms", task.table, task.rows, task.cost));
+        } catch (Throwable e) {
+            task.cost = System.currentTimeMillis() - tick;
+            task.error = e.getMessage() == null ? e.toString() : e.getMessage();
+            printMsg(LogLevel.ERROR, String.format("Table %s failed: %s", task.table, task.error));
+
+            //PostgreSQL中出错的事务不能再执行其他语句
+            if(!conn.getAutoCommit()) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * 汇总处理结果
+     */
+    protected void setTableResults(List<TableTask> tasks) {
+        int rows = 0;
+        long size = 0;
+        List<Map<String, Object>> tables = new ArrayList<>();
+        for(TableTask task : tasks) {
+            rows += task.rows;
+            size += task.size;
+
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("table", task.table);
+            info.put("rows", task.rows);
+            info.put("size", task.size);
+            info.put("cost", task.cost);
+            if(task.error != null)
+                info.put("error", task.error);
+            tables.add(info);
+        }
+        printMsg(LogLevel.INFO, String.format("Total: %d tables, %d rows", tasks.size(), rows));
+
+        this.setResultInfo("rows", rows);
+        this.setResultInfo("size", size);
+        this.setResultInfo("tables", tables);
+    }
+
+    protected static Manifest readManifest(File file) throws IOException {
+        if(!file.exists())
+            throw new RuntimeException(String.format("Manifest %s not found", file));
+        return new Gson().fromJson(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), Manifest.class);
+    }
+
+    protected static void writeManifest(File file, Manifest manifest) throws IOException {
+        Files.write(file.toPath(), new GsonBuilder().setPrettyPrinting().create().toJson(manifest).getBytes(StandardCharsets.UTF_8));
+    }
+
+    protected static String now() {
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
+    }
+
+    /**
+     * 从命令行参数中复制传递给单表处理器的参数
+     */
+    protected static Map<String, String> copyArguments(Map<String, String> args, String... names) {
+        Map<String, String> map = new HashMap<>();
+        for(String name : names) {
+            if(args.containsKey(name))
+                map.put(name, args.get(name));
+        }
+        return map;
+    }
+}
@@ -1,10 +1,15 @@
 package org.yuyun.dbtool.processor;
 
 import org.yuyun.dbtool.DataFileProcessor;
+import org.yuyun.dbtool.DeltaInfo;
 import org.yuyun.dbtool.FieldType;
+import org.yuyun.dbtool.LobRef;
 
+import java.math.BigDecimal;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.Map;
 
 public class ShowProcessor extends Processor implements DataFileProcessor {
@@ -13,8 +18,11 @@ public class ShowProcessor extends Processor implements DataFileProcessor {
     private String argInput;
     private int argRow;
     private int argFeedback;
+    private String argFilter;
     private String[] fieldNames;
     private FieldType[] fieldTypes;
+    private DeltaInfo delta;
+    private boolean found = false;
 
     @Override
     public String getActionName() {
@@ -31,17 +39,19 @@ public class ShowProcessor extends Processor implements DataFileProcessor {
      *     --input S    查看的数据文件名
      *     --row N      <可选>查看第N行数据
      *     --feedback N <可选>每多少行显示进度提示，默认为10000行
+     *     --filter S   <可选>显示满足条件的所有行，设置row时从第N行开始
      */
     @Override
     protected void parseArguments(Map<String, String> args) {
         argInput = checkMandatoryArgumentString(args, "input");
         argRow = checkOptionalArgumentInt(args, "row", 0);
         argFeedback = checkOptionalArgumentInt(args, "feedback", 10000);
+        argFilter = checkOptionalArgumentString(args, "filter", null);
     }
 
     @Override
     protected void process() throws Exception {
-        processDataFile(argInput, this, argFeedback);
+        processDataFile(argInput, this, argFeedback, argFilter);
     }
 
     public static void printSection(String msg) {
@@ -75,8 +85,16 @@ public class ShowProcessor extends Processor implements DataFileProcessor {
 
         DecimalFormat df = new DecimalFormat("#,###");
         printSection("Summary");
-        System.out.printf("        Total Rows: %s%n", df.format(totalRows));
-        System.out.printf("Total Actual Bytes: %s%n", df.format(actualBytes));
+        //流式写入的文件总行数只在文件尾
+        System.out.printf("        Total Rows: %s%n", totalRows < 0 ? "<in trailer>" : df.format(totalRows));
+        System.out.printf("Total Actual Bytes: %s%n", totalRows < 0 ? "<in trailer>" : df.format(actualBytes));
+
+        if(delta != null) {
+            printSection("Delta");
+            System.out.printf("   Watermark: %s%n", delta.getColumn());
+            System.out.printf("       Range: (%s, %s]%n", delta.getFrom() == null ? "" : delta.getFrom(), delta.getTo() == null ? "" : delta.getTo());
+            System.out.printf("   Base File: %s%n", delta.getBase() == null ? "<none>" : delta.getBase());
+        }
 
         if(ddl != null) {
             printSection("DDL Start");
@@ -89,11 +107,16 @@ public class ShowProcessor extends Processor implements DataFileProcessor {
             System.out.printf(": %s %s%n", names[i], fieldTypeNames[i]);
         }
 
+        if(argFilter != null) {
+            printSection(String.format("Filter: %s", argFilter));
+            return true;
+        }
+
         if(argRow <= 0)
             return false;
 
         printSection(String.format("Row #%d", argRow));
-        if(argRow > totalRows) {
+        if(totalRows >= 0 && argRow > totalRows) {
             System.out.println("No Row");
             return false;
         }
@@ -101,6 +124,11 @@ public class ShowProcessor extends Processor implements DataFileProcessor {
         return true;
     }
 
+    @Override
+    public void onDelta(DeltaInfo delta) {
+        this.delta = delta;
+    }
+
     @Override
     public int getStartRow() {
         return argRow;
@@ -108,47 +136,86 @@ public class ShowProcessor extends Processor implements DataFileProcessor {
 
     @Override
     public boolean onRow(int row, Object[] fields) {
+        if(argFilter != null) {
+            System.out.printf("#%d: ", row);
+            printRow(fields);
+            return true;
+        }
+
         if(row == argRow) {
-            for(int i=0; i<fieldNames.length; i++) {
-                if(i > 0)
-                    System.out.print(", ");
-                System.out.print(fieldNames[i]);
-                System.out.print("=");
-                Object o = fields[i];
-                if(o == null)
-                    System.out.print("<null>");
-                else {
-                    switch (fieldTypes[i]) {
-                        case Integer:
-                        case Long:
-                        case Double:
-                            System.out.print(o);
-                            break;
-                        case String:
-                            System.out.print('"');
-                            System.out.print(o);
-                            System.out.print('"');
-                            break;
-                        case Date:
-                            System.out.print(new SimpleDateFormat("yyyy-MM-dd").format((java.util.Date)o));
-                            break;
-                        case DateTime:
-                            System.out.print(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format((java.util.Date)o));
-                            break;
-                        case Binary:
-                            System.out.printf("<byte[%d]>", ((byte[]) o).length);
-                            break;
-                        case Null:
-                            System.out.print("<null>");
-                            break;
-                    }
+            printRow(fields);
+            found = true;
+        }
+        return row < argRow;
+    }
+
+    /**
+     * 输出时间的小数部分，去掉末尾的0
+     */
+    private static void printNanos(int nanos) {
+        if(nanos == 0)
+            return;
+        String s = String.format(".%09d", nanos);
+        int end = s.length();
+        while (s.charAt(end - 1) == '0')
+            end -= 1;
+        System.out.print(s.substring(0, end));
+    }
+
+    private void printRow(Object[] fields) {
+        for(int i=0; i<fieldNames.length; i++) {
+            if(i > 0)
+                System.out.print(", ");
+            System.out.print(fieldNames[i]);
+            System.out.print("=");
+            Object o = fields[i];
+            if(o == null)
+                System.out.print("<null>");
+            else if(o instanceof LobRef)
+                System.out.print(o);
+            else {
+                switch (fieldTypes[i]) {
+                    case Integer:
+                    case Long:
+                    case Double:
+                        System.out.print(o);
+                        break;
+                    case Decimal:
+                        System.out.print(((BigDecimal) o).toPlainString());
+                        break;
+                    case String:
+                        System.out.print('"');
+                        System.out.print(o);
+                        System.out.print('"');
+                        break;
+                    case Date:
+                        System.out.print(new SimpleDateFormat("yyyy-MM-dd").format((java.util.Date)o));
+                        break;
+                    case DateTime:
+                        System.out.print(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format((java.util.Date)o));
+                        printNanos(o instanceof java.sql.Timestamp ? ((java.sql.Timestamp) o).getNanos() : 0);
+                        break;
+                    case DateTimeTZ:
+                        OffsetDateTime odt = (OffsetDateTime) o;
+                        System.out.print(odt.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+                        printNanos(odt.getNano());
+                        System.out.print(odt.getOffset());
+                        break;
+                    case Binary:
+                        System.out.printf("<byte[%d]>", ((byte[]) o).length);
+                        break;
+                    case Null:
+                        System.out.print("<null>");
+                        break;
                 }
             }
         }
-        return row < argRow;
+        System.out.println();
     }
 
     @Override
     public void onRowEnd(int rows) {
+        if(argFilter == null && argRow > 0 && !found)
+            System.out.println("No Row");
     }
 }